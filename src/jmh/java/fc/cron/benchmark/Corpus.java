@@ -0,0 +1,26 @@
+package fc.cron.benchmark;
+
+/**
+ * Expressions used by the benchmarks. Every entry is accepted by both this library (with weeks starting on sunday)
+ * and by {@link org.quartz.CronExpression}, so the two can be compared on identical input.
+ */
+public enum Corpus {
+    EVERY_5_SECONDS("*/5 * * * * ?"),
+    EVERY_5_MINUTES("0 */5 * * * ?"),
+    WORKING_HOURS("0 0 9-17 ? * MON-FRI"),
+    LAST_DAY_OF_MONTH("0 15 10 L * ?"),
+    LAST_DAY_OF_MONTH_OFFSET("0 15 10 L-2 * ?"),
+    NEAREST_WEEKDAY("0 15 10 15W * ?"),
+    LAST_WEEKDAY_OF_MONTH("0 15 10 LW * ?"),
+    NTH_DAY_OF_WEEK("0 15 10 ? * 6#3"),
+    LAST_DAY_OF_WEEK("0 15 10 ? * 6L"),
+    SPARSE_YEARS("0 0 12 1 1 ? 2021,2023"),
+    LEAP_DAY("0 0 0 29 2 ?"),
+    IMPOSSIBLE_DATE("0 0 0 30 2 ?");
+
+    final String expr;
+
+    Corpus(String expr) {
+        this.expr = expr;
+    }
+}
@@ -0,0 +1,112 @@
+package fc.cron.benchmark;
+
+import fc.cron.CronExpression;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of finding the next fire time with {@link CronExpression} compared to {@link org.quartz.CronExpression}.
+ * Start instants are spread over a year so that month and year boundaries are part of the measurement. Run with
+ * {@code -prof gc} to get the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NextTimeAfterBenchmark {
+
+    private static final int STARTS = 1024;
+
+    @Param
+    Corpus corpus;
+
+    private CronExpression cron;
+    private org.quartz.CronExpression quartz;
+    private DateTimeZone zone;
+    private final DateTime[] starts = new DateTime[STARTS];
+    private final long[] millisStarts = new long[STARTS];
+    private final Date[] quartzStarts = new Date[STARTS];
+    private ZoneId zoneId;
+    private final ZonedDateTime[] zonedStarts = new ZonedDateTime[STARTS];
+    private int index;
+
+    @Setup
+    public void setUp() throws ParseException {
+        zone = DateTimeZone.UTC;
+        zoneId = ZoneId.of("UTC");
+        cron = new CronExpression(corpus.expr, true, true);
+        quartz = new org.quartz.CronExpression(corpus.expr);
+        quartz.setTimeZone(zone.toTimeZone());
+
+        Random random = new Random(42);
+        DateTime base = new DateTime(2016, 1, 1, 0, 0, zone);
+        for (int i = 0; i < STARTS; i++) {
+            starts[i] = base.plusSeconds(random.nextInt(366 * 24 * 60 * 60));
+            millisStarts[i] = starts[i].getMillis();
+            quartzStarts[i] = starts[i].toDate();
+            zonedStarts[i] = ZonedDateTime.ofInstant(Instant.ofEpochMilli(millisStarts[i]), zoneId);
+        }
+    }
+
+    private int next() {
+        return index = (index + 1) & (STARTS - 1);
+    }
+
+    @Benchmark
+    public DateTime cron() {
+        try {
+            return cron.nextTimeAfter(starts[next()]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public long cronMillis() {
+        try {
+            return cron.nextTimeAfter(millisStarts[next()], zone);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    @Benchmark
+    public long cronTry() {
+        return cron.tryNextTimeAfter(millisStarts[next()], zone);
+    }
+
+    @Benchmark
+    public ZonedDateTime cronJavaTime() {
+        try {
+            return cron.nextTimeAfter(zonedStarts[next()]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public Date quartz() {
+        return quartz.getNextValidTimeAfter(quartzStarts[next()]);
+    }
+}
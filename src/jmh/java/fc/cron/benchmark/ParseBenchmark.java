@@ -0,0 +1,49 @@
+package fc.cron.benchmark;
+
+import fc.cron.CronExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse throughput of {@link CronExpression} compared to {@link org.quartz.CronExpression}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param
+    Corpus corpus;
+
+    private String expr;
+
+    @Setup
+    public void setUp() {
+        expr = corpus.expr;
+    }
+
+    @Benchmark
+    public CronExpression cron() {
+        return new CronExpression(expr, true, true);
+    }
+
+    @Benchmark
+    public org.quartz.CronExpression quartz() throws ParseException {
+        return new org.quartz.CronExpression(expr);
+    }
+}
@@ -1,153 +1,648 @@
 package fc.cron;
 
 import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.List;
-import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.TreeSet;
 
 abstract class BasicField {
-    private static final Pattern CRON_FELT_REGEXP = Pattern
-            .compile("(?:                                             # start of group 1\n"
-                            + "   (?:(?<all>\\*)|(?<any>\\?) # globalt flag ( *, ? )\n"
-                            + " | (?:(?<last>L)((?<lastWeek>W)|(?:-(?<lastOffset>[0-9]{1,2}))?)))  # last modifier (L-4)\n"
-                            + " | (?<start>[0-9]{1,4}|[a-z]{3,3})              # or start number or symbol\n"
-                            + "      (?:                                        # start of group 2\n"
-                            + "         (?<mod>L|W)                             # modifier (L,W)\n"
-                            + "       | -(?<end>[0-9]{1,4}|[a-z]{3,3})        # or end nummer or symbol (in range)\n"
-                            + "      )?                                         # end of group 2\n"
-                            + ")                                              # end of group 1\n"
-                            + "(?:(?<incMod>/|\\#)(?<inc>[0-9]{1,7}))?        # increment and increment modifier (/ or \\#)\n"
-                    , Pattern.CASE_INSENSITIVE | Pattern.COMMENTS);
+    /**
+     * Last day of the month an 'H' without a range picks, so that it matches in every month.
+     */
+    private static final int HASHED_DAYS_OF_MONTH = 28;
 
     protected final CronFieldType fieldType;
     protected final List<FieldPart> parts = new ArrayList<FieldPart>();
-    private final BitSet values;
+    /**
+     * Allowed values for fields where every value fits in a single word (all but the year), with the value itself as
+     * the bit index.
+     */
+    private long mask;
+    /**
+     * Allowed values for wider fields, with the offset from {@link CronFieldType#getFrom()} as the bit index, or
+     * {@code null} when {@link #mask} is used.
+     */
+    private final long[] words;
 
     BasicField(CronFieldType fieldType, String fieldExpr) {
+        this(fieldType, fieldExpr, 0, fieldExpr.length());
+    }
+
+    BasicField(CronFieldType fieldType, CharSequence expr, int start, int end) {
+        this(fieldType, expr, start, end, null);
+    }
+
+    /**
+     * @param hashKey the key the values of 'H' are derived from, or {@code null} if 'H' is not allowed
+     */
+    BasicField(CronFieldType fieldType, CharSequence expr, int start, int end, String hashKey) {
+        this.fieldType = fieldType;
+        words = fieldType.getTo() < Long.SIZE ? null : new long[(fieldType.getTo() - fieldType.getFrom()) / Long.SIZE + 1];
+        parse(expr, start, end, hashKey);
+    }
+
+    /**
+     * Creates a field allowing the values set in {@code bits}, with the offset from {@link CronFieldType#getFrom()} as
+     * the bit index, and the rules of {@code parts}, without parsing. The rules are taken as valid for the field.
+     */
+    BasicField(CronFieldType fieldType, long[] bits, List<FieldPart> parts) {
         this.fieldType = fieldType;
-        values = new BitSet(Math.min(fieldType.getTo() - fieldType.getFrom(), 64));
-        parse(fieldExpr);
-    }
-
-    private void parse(String fieldExpr) { // NOSONAR
-        String[] rangeParts = fieldExpr.split(",");
-        for (String rangePart : rangeParts) {
-            Matcher m = CRON_FELT_REGEXP.matcher(rangePart);
-            if (!m.matches()) {
-                throw new IllegalArgumentException(String.format("Invalid cron field '%s' for field [%s]", rangePart, fieldType));
-            }
-            String startNumber = m.group("start");
-            String modifier = m.group("mod");
-            String endNumber = m.group("end");
-            String incrementModifier = m.group("incMod");
-            String increment = m.group("inc");
-            String tmp = null;
-
-            FieldPart part = new FieldPart();
-            part.setIncrement(999);
-            if (startNumber != null) {
-                part.setFrom(mapValue(startNumber));
-                part.setModifier(modifier);
-                if (endNumber != null) {
-                    part.setTo(mapValue(endNumber));
-                    part.setIncrement(1);
-                } else if (increment != null) {
-                    part.setTo(fieldType.getEnd());
-                } else {
-                    part.setTo(part.getFrom());
+        int range = fieldType.getTo() - fieldType.getFrom() + 1;
+        int length = (range - 1) / Long.SIZE + 1;
+        int lastBits = range - (length - 1) * Long.SIZE;
+        if (bits.length != length || lastBits < Long.SIZE && bits[length - 1] >>> lastBits != 0) {
+            throw new IllegalArgumentException(String.format("Invalid values for field [%s]", fieldType));
+        }
+        if (fieldType.getTo() < Long.SIZE) {
+            words = null;
+            mask = bits[0] << fieldType.getFrom();
+        } else {
+            words = bits.clone();
+        }
+        this.parts.addAll(parts);
+    }
+
+    /**
+     * Parses the comma separated parts of {@code expr[start, end)} in a single pass. Each part is on the form
+     *
+     * <pre>
+     *   ( '*' | '?' | 'H' ( '(' value '-' value ')' )? | 'L' ( 'W' | '-' offset )? | value ( 'L' | 'W' | '-' value )? )
+     *   ( ( '/' | '#' ) increment )?
+     * </pre>
+     *
+     * where a value is a number of at most 4 digits or a 3 letter name, all case-insensitive. 'H' stands for a value
+     * derived from {@code hashKey}, see {@link #hashedValue(String, int)}.
+     */
+    private void parse(CharSequence expr, int start, int end, String hashKey) {
+        // like String.split, trailing empty parts are ignored
+        while (end > start + 1 && expr.charAt(end - 1) == ',') {
+            end--;
+        }
+        int partStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || expr.charAt(i) == ',') {
+                addPart(parsePart(expr, partStart, i, hashKey));
+                partStart = i + 1;
+            }
+        }
+    }
+
+    private ParsedPart parsePart(CharSequence expr, int start, int end, String hashKey) { // NOSONAR
+        ParsedPart part = new ParsedPart();
+        int pos = start;
+        char c = charAt(expr, pos, end);
+        boolean hashed = false;
+        if (c == 'H') {
+            hashed = true;
+            pos++;
+            if (charAt(expr, pos, end) == '(') {
+                int valueEnd = scanValue(expr, pos + 1, end);
+                int toEnd = charAt(expr, valueEnd, end) == '-' ? scanValue(expr, valueEnd + 1, end) : valueEnd + 1;
+                if (valueEnd == pos + 1 || toEnd == valueEnd + 1 || charAt(expr, toEnd, end) != ')') {
+                    throw invalidPart(expr, start, end);
+                }
+                part.from = mapValue(expr, pos + 1, valueEnd);
+                part.to = mapValue(expr, valueEnd + 1, toEnd);
+                if (part.from > part.to) {
+                    throw invalidPart(expr, start, end);
+                }
+                validateRange(part);
+                pos = toEnd + 1;
+            } else {
+                part.from = fieldType.getFrom();
+                part.to = fieldType == CronFieldType.DAY_OF_MONTH ? HASHED_DAYS_OF_MONTH : fieldType.getTo();
+            }
+        } else if (c == '*') {
+            part.from = fieldType.getStart();
+            part.to = fieldType.getEnd();
+            part.increment = 1;
+            pos++;
+        } else if (c == '?') {
+            part.modifier = "?";
+            pos++;
+        } else if (c == 'L') {
+            part.modifier = "L";
+            pos++;
+            if (charAt(expr, pos, end) == 'W') {
+                part.modifier = "LW";
+                pos++;
+            } else if (charAt(expr, pos, end) == '-') {
+                int offsetEnd = scanDigits(expr, pos + 1, end, 2);
+                if (offsetEnd == pos + 1) {
+                    throw invalidPart(expr, start, end);
                 }
-            } else if (m.group("all") != null) {
-                part.setFrom(fieldType.getStart());
-                part.setTo(fieldType.getEnd());
-                part.setIncrement(1);
-            } else if ((tmp = m.group("any")) != null) {
-                part.setModifier(tmp);
-
-            } else if ((tmp = m.group("last")) != null) {
-                part.setModifier(tmp);
-                startNumber = m.group("lastOffset");
-                if(startNumber != null){
-                    part.setFrom(mapValue(startNumber));
-                    part.setTo(part.getFrom());
+                part.from = mapValue(expr, pos + 1, offsetEnd);
+                part.to = part.from;
+                pos = offsetEnd;
+            }
+        } else {
+            int valueEnd = scanValue(expr, pos, end);
+            if (valueEnd == pos) {
+                throw invalidPart(expr, start, end);
+            }
+            part.from = mapValue(expr, pos, valueEnd);
+            pos = valueEnd;
+            c = charAt(expr, pos, end);
+            if (c == 'L' || c == 'W') {
+                part.modifier = c == 'L' ? "L" : "W";
+                pos++;
+            } else if (c == '-') {
+                valueEnd = scanValue(expr, pos + 1, end);
+                if (valueEnd == pos + 1) {
+                    throw invalidPart(expr, start, end);
                 }
-                if (m.group("lastWeek") != null) {
-                    part.setModifier("LW");
+                part.to = mapValue(expr, pos + 1, valueEnd);
+                part.increment = 1;
+                pos = valueEnd;
+            }
+        }
+
+        c = charAt(expr, pos, end);
+        if (c == '/' || c == '#') {
+            int incrementEnd = scanDigits(expr, pos + 1, end, 7);
+            if (incrementEnd == pos + 1) {
+                throw invalidPart(expr, start, end);
+            }
+            part.incrementModifier = c == '/' ? "/" : "#";
+            part.increment = parseInt(expr, pos + 1, incrementEnd);
+            if (part.from != ParsedPart.NONE && part.to == ParsedPart.NONE) {
+                part.to = fieldType.getEnd();
+            }
+            pos = incrementEnd;
+        }
+        if (pos != end) {
+            throw invalidPart(expr, start, end);
+        }
+        if (hashed) {
+            // a hashed year would mostly be one which has passed, so H spreads times within a year only
+            if (hashKey == null || fieldType == CronFieldType.YEAR || "#".equals(part.incrementModifier)) {
+                throw new IllegalArgumentException(String.format("Invalid cron field '%s' for field [%s]%s", expr.subSequence(start, end),
+                        fieldType, hashKey == null ? ", H needs a hash key" : ""));
+            }
+            // a single value, or the first of the steps, between from and to
+            int range = part.incrementModifier == null ? part.to - part.from + 1 : Math.min(part.increment, part.to - part.from + 1);
+            part.from += hashedValue(hashKey, range);
+            if (part.incrementModifier == null) {
+                part.to = part.from;
+            }
+        }
+        if (part.from != ParsedPart.NONE && part.to == ParsedPart.NONE) {
+            part.to = part.from;
+        }
+        return part;
+    }
+
+    private void addPart(ParsedPart part) {
+        validateRange(part);
+        validatePart(part);
+
+        if ("?".equals(part.modifier)) {
+            // no special value, the same as allowing all of them
+            for (int i = fieldType.getFrom(); i <= fieldType.getTo(); i++) {
+                setValue(i);
+            }
+        } else if (part.modifier != null || part.incrementModifier != null && !"/".equals(part.incrementModifier)) {
+            FieldPart rule = compileRule(part);
+            if (rule != null) {
+                parts.add(rule);
+            }
+        } else if (part.from != ParsedPart.NONE && part.to != ParsedPart.NONE) {
+            int from = part.from;
+            int to = part.to;
+            int partIncrement = part.increment;
+            final int min = fieldType.getFrom();
+            if (from <= to) {
+                for (int i = from; i <= to; i += partIncrement) {
+                    setValue(i);
                 }
             } else {
-                throw new IllegalArgumentException("Invalid cron part: " + rangePart);
-            }
-
-            if (increment != null) {
-                part.setIncrementModifier(incrementModifier);
-                part.setIncrement(Integer.valueOf(increment));
-            }
-
-            validateRange(part);
-            validatePart(part);
-
-            if (part.getModifier() != null || part.getIncrementModifier() != null && !"/".equals(part.getIncrementModifier())) {
-                parts.add(part);
-            } else if (part.getFrom() != null && part.getTo() != null) {
-                int from = part.getFrom();
-                int to = part.getTo();
-                int partIncrement = part.getIncrement();
-                final int min = fieldType.getFrom();
-                if (from <= to) {
-                    for (int i = from; i <= to; i += partIncrement) {
-                        values.set(i - min);
-                    }
-                } else {
-                    int i = from;
-                    final int max = fieldType.getTo();
-                    for (; i <= max; i += partIncrement) {
-                        values.set(i - min);
-                    }
-
-                    for (i -= max - min + 1; i <= to; i += partIncrement) {
-                        values.set(i - min);
-                    }
+                int i = from;
+                final int max = fieldType.getTo();
+                for (; i <= max; i += partIncrement) {
+                    setValue(i);
+                }
+
+                for (i -= max - min + 1; i <= to; i += partIncrement) {
+                    setValue(i);
                 }
             }
         }
     }
 
-    protected void validatePart(FieldPart part) {
-        if (part.getModifier() != null) {
-            throw new IllegalArgumentException(String.format("Invalid modifier [%s]", part.getModifier()));
-        } else if (part.getIncrementModifier() != null && !"/".equals(part.getIncrementModifier())) {
-            throw new IllegalArgumentException(String.format("Invalid increment modifier [%s]", part.getIncrementModifier()));
+    protected void validatePart(ParsedPart part) {
+        if (part.modifier != null) {
+            throw new IllegalArgumentException(String.format("Invalid modifier [%s]", part.modifier));
+        } else if (part.incrementModifier != null && !"/".equals(part.incrementModifier)) {
+            throw new IllegalArgumentException(String.format("Invalid increment modifier [%s]", part.incrementModifier));
         }
     }
 
-    private void validateRange(FieldPart part) {
-        if ((part.getFrom() != null && part.getFrom() < fieldType.getFrom()) || (part.getTo() != null && part.getTo() > fieldType.getTo())) {
-            throw new IllegalArgumentException(String.format("Invalid interval [%s-%s], must be %s<=_<=%s", part.getFrom(), part.getTo(), fieldType.getFrom(),
+    /**
+     * Compiles a part with a modifier which passed {@link #validatePart(ParsedPart)}.
+     *
+     * @return the rule, or {@code null} if the part only allows values, which are then set with {@link #setValue(int)}
+     */
+    protected FieldPart compileRule(ParsedPart part) {
+        throw new IllegalStateException("Unknown part: " + part);
+    }
+
+    private void validateRange(ParsedPart part) {
+        if ((part.from != ParsedPart.NONE && part.from < fieldType.getFrom()) || (part.to != ParsedPart.NONE && part.to > fieldType.getTo())) {
+            throw new IllegalArgumentException(String.format("Invalid interval [%s-%s], must be %s<=_<=%s", part.from, part.to, fieldType.getFrom(),
                     fieldType.getTo()));
         }
         //TODO: validate increment
     }
 
-    protected Integer mapValue(String value) {
-        Integer idx;
-        if (fieldType.getNames() != null && (idx = fieldType.getNames().indexOf(value.toUpperCase(Locale.US))) >= 0) {
-            return idx + 1;
+    /**
+     * Derives the offset of an 'H' from the start of its range, the same for the same key and field on every run, and
+     * evenly spread over the range for different keys. The day of week field gives the same day whichever day the week
+     * starts on.
+     *
+     * @return a value from 0 to {@code range - 1}
+     */
+    int hashedValue(String hashKey, int range) {
+        // FNV-1a over the key, salted with the field and finished by the mixer of SplitMix64
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < hashKey.length(); i++) {
+            hash = (hash ^ hashKey.charAt(i)) * 0x100000001b3L;
+        }
+        CronFieldType salt = fieldType == CronFieldType.DAY_OF_WEEK_US ? CronFieldType.DAY_OF_WEEK : fieldType;
+        hash += (salt.ordinal() + 1) * 0x9e3779b97f4a7c15L;
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        hash ^= hash >>> 31;
+        return (int) Math.floorMod(hash, (long) range);
+    }
+
+    /**
+     * Maps a number or a name in {@code expr[start, end)} to the value of this field.
+     */
+    protected int mapValue(CharSequence expr, int start, int end) {
+        if (isDigit(expr.charAt(start))) {
+            return mapNumber(parseInt(expr, start, end));
+        }
+        List<String> names = fieldType.getNames();
+        if (names != null) {
+            for (int i = 0; i < names.size(); i++) {
+                if (matchesIgnoreCase(names.get(i), expr, start, end)) {
+                    return i + 1;
+                }
+            }
+        }
+        throw new IllegalArgumentException(String.format("Invalid value '%s' for field [%s]", expr.subSequence(start, end), fieldType));
+    }
+
+    protected int mapNumber(int value) {
+        return value;
+    }
+
+    private IllegalArgumentException invalidPart(CharSequence expr, int start, int end) {
+        return new IllegalArgumentException(String.format("Invalid cron field '%s' for field [%s]", expr.subSequence(start, end), fieldType));
+    }
+
+    /**
+     * @return the upper case character at {@code pos}, or a space if {@code pos} is at the end of the part
+     */
+    private static char charAt(CharSequence expr, int pos, int end) {
+        if (pos >= end) {
+            return ' ';
+        }
+        char c = expr.charAt(pos);
+        return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+    }
+
+    /**
+     * @return the end of a number of at most 4 digits or a 3 letter name starting at {@code pos}, {@code pos} if neither
+     */
+    private static int scanValue(CharSequence expr, int pos, int end) {
+        int digitsEnd = scanDigits(expr, pos, end, 4);
+        if (digitsEnd > pos) {
+            return digitsEnd;
+        } else if (pos + 3 <= end && isLetter(expr.charAt(pos)) && isLetter(expr.charAt(pos + 1)) && isLetter(expr.charAt(pos + 2))) {
+            return pos + 3;
+        }
+        return pos;
+    }
+
+    private static int scanDigits(CharSequence expr, int pos, int end, int maxDigits) {
+        int limit = Math.min(end, pos + maxDigits);
+        while (pos < limit && isDigit(expr.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int parseInt(CharSequence expr, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + expr.charAt(i) - '0';
+        }
+        return value;
+    }
+
+    private static boolean matchesIgnoreCase(String name, CharSequence expr, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != charAt(expr, start + i, end)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    void setValue(int value) {
+        if (words == null) {
+            mask |= 1L << value;
+        } else {
+            int i = value - fieldType.getFrom();
+            words[i >>> 6] |= 1L << i;
         }
-        return Integer.valueOf(value);
     }
 
+    /**
+     * @return the first allowed value which is equal to or greater than {@code previous}, or -1 if there is none
+     */
     int nextValue(int previous) {
-        int i = values.nextSetBit(previous - fieldType.getFrom());
-        return i >= 0 ? i + fieldType.getFrom() : i;
+        if (words == null) {
+            if (previous >= Long.SIZE) {
+                return -1;
+            }
+            long next = mask & (-1L << Math.max(previous, 0));
+            return next == 0 ? -1 : Long.numberOfTrailingZeros(next);
+        }
+
+        int i = Math.max(previous - fieldType.getFrom(), 0);
+        int w = i >>> 6;
+        if (w >= words.length) {
+            return -1;
+        }
+        long word = words[w] & (-1L << i);
+        while (word == 0) {
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return fieldType.getFrom() + w * Long.SIZE + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @return the smallest allowed value, used when a field wraps around, or -1 if only modifiers are given
+     */
+    int firstValue() {
+        return nextValue(fieldType.getFrom());
+    }
+
+    /**
+     * @return the last allowed value which is equal to or less than {@code next}, or -1 if there is none
+     */
+    int previousValue(int next) {
+        if (next < 0) {
+            return -1;
+        }
+        if (words == null) {
+            // 2L << 63 overflows to 0, which makes all bits allowed
+            long previous = mask & ((2L << Math.min(next, Long.SIZE - 1)) - 1);
+            return previous == 0 ? -1 : Long.SIZE - 1 - Long.numberOfLeadingZeros(previous);
+        }
+
+        int i = Math.min(next - fieldType.getFrom(), words.length * Long.SIZE - 1);
+        if (i < 0) {
+            return -1;
+        }
+        int w = i >>> 6;
+        long word = words[w] & ((2L << i) - 1);
+        while (word == 0) {
+            if (--w < 0) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return fieldType.getFrom() + w * Long.SIZE + Long.SIZE - 1 - Long.numberOfLeadingZeros(word);
+    }
+
+    /**
+     * @return the largest allowed value, used when a field wraps around backwards, or -1 if only modifiers are given
+     */
+    int lastValue() {
+        return previousValue(fieldType.getTo());
+    }
+
+    /**
+     * @return the smallest difference between consecutive allowed values, or -1 if fewer than two are allowed
+     */
+    int minimumGap() {
+        int gap = -1;
+        for (int value = firstValue(), next = nextValue(value + 1); next >= 0; value = next, next = nextValue(next + 1)) {
+            gap = gap < 0 ? next - value : Math.min(gap, next - value);
+        }
+        return gap;
+    }
+
+    /**
+     * @return the largest difference between consecutive allowed values, or -1 if fewer than two are allowed
+     */
+    int maximumGap() {
+        int gap = -1;
+        for (int value = firstValue(), next = nextValue(value + 1); next >= 0; value = next, next = nextValue(next + 1)) {
+            gap = Math.max(gap, next - value);
+        }
+        return gap;
+    }
+
+    /**
+     * @return the number of allowed values which are less than {@code value}
+     */
+    int countValuesBefore(int value) {
+        if (words == null) {
+            if (value <= 0) {
+                return 0;
+            }
+            return Long.bitCount(value >= Long.SIZE ? mask : mask & ((1L << value) - 1));
+        }
+
+        int i = Math.min(value - fieldType.getFrom(), words.length * Long.SIZE);
+        if (i <= 0) {
+            return 0;
+        }
+        int count = 0;
+        for (int w = 0; w < i >>> 6; w++) {
+            count += Long.bitCount(words[w]);
+        }
+        if ((i & (Long.SIZE - 1)) != 0) {
+            count += Long.bitCount(words[i >>> 6] & ((1L << i) - 1));
+        }
+        return count;
+    }
+
+    int countValues() {
+        return countValuesBefore(fieldType.getTo() + 1);
+    }
+
+    /**
+     * @return the distance between the allowed values if they are evenly spaced over the whole range of the field, so
+     * that the spacing continues when the field wraps around (e.g. 15 for 0/15 or 5/15 in the seconds field, the range
+     * for a single value), or 0 if they are not
+     */
+    int evenStep() {
+        int count = countValues();
+        int range = fieldType.getTo() - fieldType.getFrom() + 1;
+        if (!parts.isEmpty() || count == 0 || range % count != 0) {
+            return 0;
+        }
+        int step = range / count;
+        int first = firstValue();
+        if (first - fieldType.getFrom() >= step) {
+            return 0;
+        }
+        for (int value = first; value <= fieldType.getTo(); value += step) {
+            if (!matches(value)) {
+                return 0;
+            }
+        }
+        return step;
     }
 
-    boolean hasValues(){
-        return !values.isEmpty();
+    /**
+     * @return whether every value of the field is allowed, by '*' or '?'
+     */
+    boolean matchesAll() {
+        return countValues() == fieldType.getTo() - fieldType.getFrom() + 1;
+    }
+
+    boolean hasValues() {
+        if (words == null) {
+            return mask != 0;
+        }
+        for (long word : words) {
+            if (word != 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     boolean matches(int val) {
-        return values.get(val - fieldType.getFrom());
+        if (words == null) {
+            return (val & -Long.SIZE) == 0 && (mask & 1L << val) != 0;
+        }
+        int i = val - fieldType.getFrom();
+        return i >= 0 && i <= fieldType.getTo() - fieldType.getFrom() && (words[i >>> 6] & 1L << i) != 0;
+    }
+
+    /**
+     * Appends the canonical form of the field, which is the same for all fields allowing the same values with the same
+     * rules: '*' when every value is allowed, otherwise the values as a step, as ranges or one by one, followed by the
+     * rules in sorted order.
+     */
+    void appendCanonical(StringBuilder sb) {
+        if (matchesAll()) {
+            sb.append('*');
+            return;
+        }
+        int start = sb.length();
+        appendCanonicalValues(sb);
+        Set<String> rules = new TreeSet<String>();
+        for (FieldPart part : parts) {
+            rules.add(canonicalPart(part));
+        }
+        for (String rule : rules) {
+            if (sb.length() > start) {
+                sb.append(',');
+            }
+            sb.append(rule);
+        }
+    }
+
+    private void appendCanonicalValues(StringBuilder sb) {
+        int count = countValues();
+        if (count == 0) {
+            return;
+        } else if (count == fieldType.getTo() - fieldType.getFrom() + 1) {
+            sb.append('*');
+            return;
+        }
+        int first = firstValue();
+        int last = lastValue();
+        int step = count > 2 ? (last - first) / (count - 1) : 0;
+        if (step > 1 && isStep(first, last, step, count)) {
+            sb.append(canonicalValue(first));
+            // the end is spelled out for named fields, where a step without one wraps in the US day of week field
+            if (last + step <= fieldType.getTo() || fieldType.getNames() != null) {
+                sb.append('-').append(canonicalValue(last));
+            }
+            sb.append('/').append(step);
+            return;
+        }
+        String separator = "";
+        for (int from = first; from >= 0; ) {
+            int to = from;
+            while (to < fieldType.getTo() && matches(to + 1)) {
+                to++;
+            }
+            sb.append(separator).append(canonicalValue(from));
+            if (to > from) {
+                sb.append('-').append(canonicalValue(to));
+            }
+            separator = ",";
+            from = nextValue(to + 1);
+        }
+    }
+
+    private boolean isStep(int first, int last, int step, int count) {
+        if (step * (count - 1) != last - first) {
+            return false;
+        }
+        for (int value = first; value <= last; value += step) {
+            if (!matches(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code value} as written in the canonical form
+     */
+    protected String canonicalValue(int value) {
+        return Integer.toString(value);
+    }
+
+    /**
+     * @return the rule given by {@code part} as written in the canonical form
+     */
+    protected String canonicalPart(FieldPart part) {
+        throw new IllegalStateException("Unknown part: " + part);
+    }
+
+    /**
+     * A comma separated part as written, kept while parsing only.
+     */
+    static final class ParsedPart {
+        static final int NONE = -1;
+
+        int from = NONE;
+        int to = NONE;
+        int increment = 999;
+        String modifier;
+        String incrementModifier;
+
+        @Override
+        public String toString() {
+            return "ParsedPart{from=" + from + ", to=" + to + ", increment=" + increment + ", modifier='" + modifier
+                    + "', incrementModifier='" + incrementModifier + "'}";
+        }
     }
 
     @Override
@@ -155,7 +650,13 @@ abstract class BasicField {
         final StringBuilder sb = new StringBuilder("BasicField{");
         sb.append("fieldType=").append(fieldType);
         sb.append(", parts=").append(parts);
-        sb.append(", values=").append(values);
+        sb.append(", values={");
+        String separator = "";
+        for (int value = firstValue(); value >= 0; value = nextValue(value + 1)) {
+            sb.append(separator).append(value);
+            separator = ", ";
+        }
+        sb.append('}');
         sb.append('}');
         return sb.toString();
     }
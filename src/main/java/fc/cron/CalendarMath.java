@@ -0,0 +1,148 @@
+package fc.cron;
+
+/**
+ * Primitive ISO calendar arithmetic used by the evaluation loops, so that searching for the next time does not need to
+ * allocate date objects. Dates are packed into a single int as {@code year << 9 | month << 5 | dayOfMonth}, which keeps
+ * them ordered and cheap to pass around.
+ */
+final class CalendarMath {
+
+    static final long MILLIS_PER_SECOND = 1000L;
+    static final long SECONDS_PER_DAY = 24 * 60 * 60;
+    static final long MILLIS_PER_DAY = SECONDS_PER_DAY * MILLIS_PER_SECOND;
+
+    private static final int DAYS_0000_TO_1970 = 719468;
+    private static final long DAYS_PER_CYCLE = 146097;
+    private static final int[] DAYS_BEFORE_MONTH = {0, 0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334};
+
+    private CalendarMath() {
+    }
+
+    static int date(int year, int month, int dayOfMonth) {
+        return year << 9 | month << 5 | dayOfMonth;
+    }
+
+    static int year(int date) {
+        return date >> 9;
+    }
+
+    static int month(int date) {
+        return (date >>> 5) & 0xF;
+    }
+
+    static int dayOfMonth(int date) {
+        return date & 0x1F;
+    }
+
+    static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    static int lengthOfMonth(int date) {
+        return lengthOfMonth(year(date), month(date));
+    }
+
+    /**
+     * @return the day of the year, starting at 1
+     */
+    static int dayOfYear(int date) {
+        int month = month(date);
+        return DAYS_BEFORE_MONTH[month] + dayOfMonth(date) + (month > 2 && isLeapYear(year(date)) ? 1 : 0);
+    }
+
+    static int dateOfYear(int year, int dayOfYear) {
+        int leapDay = isLeapYear(year) ? 1 : 0;
+        int month = 12;
+        while (dayOfYear <= DAYS_BEFORE_MONTH[month] + (month > 2 ? leapDay : 0)) {
+            month--;
+        }
+        return date(year, month, dayOfYear - DAYS_BEFORE_MONTH[month] - (month > 2 ? leapDay : 0));
+    }
+
+    /**
+     * @return the ISO day of week (1 = monday, 7 = sunday)
+     */
+    static int dayOfWeek(long epochDay) {
+        return (int) Math.floorMod(epochDay + 3, 7L) + 1;
+    }
+
+    static int dayOfWeek(int date) {
+        return dayOfWeek(epochDay(date));
+    }
+
+    static long epochDay(int date) {
+        return epochDay(year(date), month(date), dayOfMonth(date));
+    }
+
+    static long epochDay(int year, int month, int dayOfMonth) {
+        // days from civil, counting years from march so that the leap day is the last day of the year
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400L);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + dayOfMonth - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_CYCLE + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    static int date(long epochDay) {
+        long days = epochDay + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(days, DAYS_PER_CYCLE);
+        long dayOfEra = days - era * DAYS_PER_CYCLE;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthFromMarch = (int) ((5 * dayOfYear + 2) / 153);
+        int dayOfMonth = (int) (dayOfYear - (153 * monthFromMarch + 2) / 5 + 1);
+        int month = monthFromMarch < 10 ? monthFromMarch + 3 : monthFromMarch - 9;
+        int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+        return date(year, month, dayOfMonth);
+    }
+
+    static int nextDay(int date) {
+        int day = dayOfMonth(date);
+        return day < lengthOfMonth(date) ? date + 1 : firstDayOfNextMonth(date);
+    }
+
+    static int firstDayOfNextMonth(int date) {
+        int month = month(date);
+        return month < 12 ? date(year(date), month + 1, 1) : date(year(date) + 1, 1, 1);
+    }
+
+    static int previousDay(int date) {
+        if (dayOfMonth(date) > 1) {
+            return date - 1;
+        }
+        int month = month(date);
+        return month > 1 ? date(year(date), month - 1, lengthOfMonth(year(date), month - 1)) : date(year(date) - 1, 12, 31);
+    }
+
+    static long localMillis(int date, int hour, int minute, int second) {
+        return epochDay(date) * MILLIS_PER_DAY + ((hour * 60L + minute) * 60L + second) * MILLIS_PER_SECOND;
+    }
+
+    /**
+     * Adds whole years to a local time, keeping the time of day and clamping the day to the length of the month (so
+     * that 29th of february becomes 28th in non leap years).
+     */
+    static long plusYears(long localMillis, int years) {
+        long epochDay = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+        long millisOfDay = localMillis - epochDay * MILLIS_PER_DAY;
+        int date = date(epochDay);
+        int year = year(date) + years;
+        int day = Math.min(dayOfMonth(date), lengthOfMonth(year, month(date)));
+        return epochDay(year, month(date), day) * MILLIS_PER_DAY + millisOfDay;
+    }
+}
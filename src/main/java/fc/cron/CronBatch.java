@@ -0,0 +1,99 @@
+package fc.cron;
+
+import org.joda.time.DateTimeZone;
+
+import java.time.ZoneId;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Next times of many expressions from the same instant, e.g. to recompute every schedule after a failover. The start
+ * is decomposed once for the whole batch and the expressions are split over the cores with fork/join, each searched
+ * like {@link CronExpression#tryNextTimeAfter(long, DateTimeZone)}: an expression without a next time within its search
+ * horizon gives {@link CronExpression#NO_TIME} instead of an exception.
+ */
+public final class CronBatch {
+
+    /**
+     * Expressions searched by a task before it stops splitting.
+     */
+    static final int THRESHOLD = 1024;
+
+    private CronBatch() {
+    }
+
+    /**
+     * Fills {@code out[i]} with the next time of {@code expressions[i]} after {@code afterTime}, using the common
+     * fork/join pool.
+     *
+     * @param afterTime instant in milliseconds since the epoch
+     * @param zone      the zone to evaluate the expressions in
+     * @param out       receives the instants in milliseconds since the epoch, or {@link CronExpression#NO_TIME}
+     */
+    public static void tryNextTimesAfter(CronExpression[] expressions, long afterTime, DateTimeZone zone, long[] out) {
+        tryNextTimesAfter(expressions, new SearchStart(afterTime, ZoneOffsets.of(zone)), out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #tryNextTimesAfter(CronExpression[], long, DateTimeZone, long[])}, running on {@code pool}.
+     */
+    public static void tryNextTimesAfter(CronExpression[] expressions, long afterTime, DateTimeZone zone, long[] out, ForkJoinPool pool) {
+        tryNextTimesAfter(expressions, new SearchStart(afterTime, ZoneOffsets.of(zone)), out, pool);
+    }
+
+    /**
+     * Same as {@link #tryNextTimesAfter(CronExpression[], long, DateTimeZone, long[])} in a {@code java.time} zone.
+     */
+    public static void tryNextTimesAfter(CronExpression[] expressions, long afterTime, ZoneId zone, long[] out) {
+        tryNextTimesAfter(expressions, new SearchStart(afterTime, ZoneOffsets.of(zone)), out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #tryNextTimesAfter(CronExpression[], long, ZoneId, long[])}, running on {@code pool}.
+     */
+    public static void tryNextTimesAfter(CronExpression[] expressions, long afterTime, ZoneId zone, long[] out, ForkJoinPool pool) {
+        tryNextTimesAfter(expressions, new SearchStart(afterTime, ZoneOffsets.of(zone)), out, pool);
+    }
+
+    private static void tryNextTimesAfter(CronExpression[] expressions, SearchStart start, long[] out, ForkJoinPool pool) {
+        if (out.length < expressions.length) {
+            throw new IllegalArgumentException("Output of length " + out.length + " is too short for " + expressions.length + " expressions");
+        }
+        NextTimes task = new NextTimes(expressions, start, out, 0, expressions.length);
+        if (expressions.length <= THRESHOLD) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    private static final class NextTimes extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CronExpression[] expressions;
+        private final SearchStart start;
+        private final long[] out;
+        private final int from;
+        private final int to;
+
+        NextTimes(CronExpression[] expressions, SearchStart start, long[] out, int from, int to) {
+            this.expressions = expressions;
+            this.start = start;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    out[i] = expressions[i].tryNextTimeAfter(start);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new NextTimes(expressions, start, out, from, middle), new NextTimes(expressions, start, out, middle, to));
+            }
+        }
+    }
+}
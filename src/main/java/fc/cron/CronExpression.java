@@ -15,13 +15,22 @@
  */
 package fc.cron;
 
+import org.joda.time.Chronology;
 import org.joda.time.DateTime;
-import org.joda.time.LocalDate;
-import org.joda.time.MutableDateTime;
-import org.joda.time.ReadableInstant;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.regex.Pattern;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Parser for unix-like cron expressions: Cron expressions allow specifying combinations of criteria
@@ -78,6 +87,25 @@ import java.util.regex.Pattern;
  */
 public class CronExpression {
 
+    /**
+     * Returned by {@link #tryNextTimeAfter(long, DateTimeZone)} and {@link #tryPreviousTimeBefore(long, DateTimeZone)}
+     * when there is no matching time. Matching times are whole seconds, so this is never a valid result.
+     */
+    public static final long NO_TIME = -1L;
+
+    /**
+     * Number of years searched by the methods not given a barrier, unless changed with {@link #withSearchHorizon(int)}.
+     */
+    public static final int DEFAULT_SEARCH_HORIZON = 8;
+
+    private static final long NO_NEXT_TIME = NO_TIME;
+    private static final long BARRIER_REACHED = LocalTimeSearch.BARRIER_REACHED;
+    private static final long FIRST_YEAR_SECOND = CalendarMath.epochDay(CronFieldType.YEAR.getFrom(), 1, 1) * CalendarMath.SECONDS_PER_DAY;
+    private static final long END_YEAR_SECOND = CalendarMath.epochDay(CronFieldType.YEAR.getTo() + 1, 1, 1) * CalendarMath.SECONDS_PER_DAY;
+
+    /**
+     * The source text, or {@code null} for an expression built from its fields by {@link CronExpressionCodec}.
+     */
     private final String expr;
     private final SimpleField secondField;
     private final SimpleField minuteField;
@@ -86,6 +114,50 @@ public class CronExpression {
     private final SimpleField monthField;
     private final DayOfMonthField dayOfMonthField;
     private final SimpleField yearField;
+    /**
+     * Matching dates of recently searched years, built lazily and indexed by the three lowest bits of the year, so that
+     * a search over the default 8 year horizon fits. The masks are immutable, so threads racing on a slot at worst build
+     * the same mask twice.
+     */
+    private final DaysOfYear[] daysOfYear;
+    /**
+     * The wall-clock search of this expression, for {@link ReversibleLocalTimeSearch} to map to instants.
+     */
+    private final ReversibleLocalTimeSearch localTimes = new ReversibleLocalTimeSearch() {
+        @Override
+        long nextLocalTime(long afterLocal, long barrierLocal) {
+            return CronExpression.this.nextLocalTime(afterLocal, barrierLocal);
+        }
+
+        @Override
+        long previousLocalTime(long beforeLocal, long barrierLocal) {
+            return CronExpression.this.previousLocalTime(beforeLocal, barrierLocal);
+        }
+    };
+    private final int searchHorizon;
+    private final GapPolicy gapPolicy;
+    private final OverlapPolicy overlapPolicy;
+    /**
+     * Seconds between consecutive times if they are evenly spaced in wall-clock time, otherwise 0.
+     */
+    private final int fixedPeriod;
+    /**
+     * The first matching second of each day, which is less than {@link #fixedPeriod}.
+     */
+    private final int fixedOffset;
+    /**
+     * 1 if some time matches, -1 if none does, 0 until known. Racy like {@link String#hashCode()}: the computation
+     * always gives the same result.
+     */
+    private int satisfiability;
+    /**
+     * Built on first use, racy like {@link #satisfiability}.
+     */
+    private String canonical;
+    /**
+     * Built on first use, racy like {@link #satisfiability}.
+     */
+    private CronStatistics statistics;
 
     public CronExpression(final String expr) {
         this(expr, true);
@@ -96,6 +168,19 @@ public class CronExpression {
     }
 
     public CronExpression(final String expr, boolean shouldHaveSeconds, boolean weekStartsSunday) {
+        this(expr, shouldHaveSeconds, weekStartsSunday, null);
+    }
+
+    /**
+     * Creates an expression which may use 'H' in place of a value, as in Jenkins, to spread the times of many jobs over
+     * the range of a field: {@code H} alone, {@code H(0-29)} for a range, and {@code H/15} or {@code H(0-29)/10} for a
+     * step starting at a hashed offset. The values are derived from {@code hashKey}, e.g. the name of the job, so that
+     * they stay the same across restarts. An 'H' in the day of month field picks one of the days 1 to 28, which exist in
+     * every month. The expression is compared by the values 'H' resolved to, not by its key.
+     *
+     * @param hashKey the key the values of 'H' are derived from, or {@code null} if 'H' is not allowed
+     */
+    public CronExpression(final String expr, boolean shouldHaveSeconds, boolean weekStartsSunday, String hashKey) {
         if (expr == null) {
             throw new IllegalArgumentException("expr is null"); //$NON-NLS-1$
         }
@@ -104,55 +189,145 @@ public class CronExpression {
         boolean withYear = false;
         boolean withSeconds = false;
 
-        final String[] parts = expr.split("\\s+"); //$NON-NLS-1$
-        if (parts.length < 5) {
+        // start and end index of each field, scanned in a single pass without creating substrings
+        final int[] bounds = new int[2 * 7];
+        int count = 0;
+        for (int i = 0; i < expr.length(); ) {
+            if (isWhitespace(expr.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < expr.length() && !isWhitespace(expr.charAt(i))) {
+                i++;
+            }
+            if (count < 7) {
+                bounds[2 * count] = start;
+                bounds[2 * count + 1] = i;
+            }
+            count++;
+        }
+
+        if (count < 5) {
             throw new IllegalArgumentException(String.format("Invalid cron expression [%s], expected at least 5 felt, got %s"
-                    , expr, parts.length));
-        } else if (parts.length == 5) {
+                    , expr, count));
+        } else if (count == 5) {
             withSeconds = false;
             withYear = false;
-        } else if (parts.length == 6) {
+        } else if (count == 6) {
             //
             //If last element contains 4 digits, a year element has been supplied and no seconds element
-            Pattern yearRegex = Pattern.compile("\\d{4}");
-            if (yearRegex.matcher(parts[5]).find()) {
+            if (containsFourDigits(expr, bounds[10], bounds[11])) {
                 withSeconds = false;
                 withYear = true;
-            } /*else if("*".equals(parts[5])) {
-                // check if the next to last element is valid as day of week field
-                try {
-                    new DayOfWeekField(parts[4]);
-                    withSeconds = false;
-                    withYear = true;
-                } catch (IllegalArgumentException e) {
-                    withSeconds = true;
-                    withYear = false;
-                }
-            }*/ else {
+            } else {
                 withSeconds = true;
                 withYear = false;
             }
-        } else if (parts.length == 7) {
+        } else if (count == 7) {
             withSeconds = true;
             withYear = true;
         } else {
             throw new IllegalArgumentException(String.format("Invalid cron expression [%s], expected at most 7 felt, got %s"
-                    , expr, parts.length));
+                    , expr, count));
         }
 
         if (shouldHaveSeconds ^ withSeconds) {
             throw new IllegalArgumentException(String.format("Invalid cron expression [%s], seconds field is not specified, got %s"
-                    , expr, parts.length));
+                    , expr, count));
         }
 
-        int ix = withSeconds ? 1 : 0;
-        this.secondField = new SimpleField(CronFieldType.SECOND, withSeconds ? parts[0] : "0");
-        this.minuteField = new SimpleField(CronFieldType.MINUTE, parts[ix++]);
-        this.hourField = new SimpleField(CronFieldType.HOUR, parts[ix++]);
-        this.dayOfMonthField = new DayOfMonthField(parts[ix++]);
-        this.monthField = new SimpleField(CronFieldType.MONTH, parts[ix++]);
-        this.dayOfWeekField = new DayOfWeekField(parts[ix++], weekStartsSunday);
-        this.yearField = new SimpleField(CronFieldType.YEAR, withYear ? parts[ix] : "*");
+        int ix = withSeconds ? 2 : 0;
+        this.secondField = withSeconds ? new SimpleField(CronFieldType.SECOND, expr, bounds[0], bounds[1], hashKey)
+                : new SimpleField(CronFieldType.SECOND, "0");
+        this.minuteField = new SimpleField(CronFieldType.MINUTE, expr, bounds[ix++], bounds[ix++], hashKey);
+        this.hourField = new SimpleField(CronFieldType.HOUR, expr, bounds[ix++], bounds[ix++], hashKey);
+        this.dayOfMonthField = new DayOfMonthField(expr, bounds[ix++], bounds[ix++], hashKey);
+        this.monthField = new SimpleField(CronFieldType.MONTH, expr, bounds[ix++], bounds[ix++], hashKey);
+        this.dayOfWeekField = new DayOfWeekField(expr, bounds[ix++], bounds[ix++], weekStartsSunday, hashKey);
+        this.yearField = withYear ? new SimpleField(CronFieldType.YEAR, expr, bounds[ix++], bounds[ix], hashKey)
+                : new SimpleField(CronFieldType.YEAR, "*");
+        this.daysOfYear = new DaysOfYear[8];
+        this.searchHorizon = DEFAULT_SEARCH_HORIZON;
+        this.gapPolicy = GapPolicy.SHIFT_FORWARD;
+        this.overlapPolicy = OverlapPolicy.CRON;
+        this.fixedPeriod = fixedPeriod();
+        this.fixedOffset = (hourField.firstValue() * 60 + minuteField.firstValue()) * 60 + secondField.firstValue();
+    }
+
+    /**
+     * Creates an expression from already built fields, which has no source text.
+     */
+    CronExpression(SimpleField secondField, SimpleField minuteField, SimpleField hourField, DayOfMonthField dayOfMonthField,
+                   SimpleField monthField, DayOfWeekField dayOfWeekField, SimpleField yearField, int searchHorizon,
+                   GapPolicy gapPolicy, OverlapPolicy overlapPolicy) {
+        this.expr = null;
+        this.secondField = secondField;
+        this.minuteField = minuteField;
+        this.hourField = hourField;
+        this.dayOfMonthField = dayOfMonthField;
+        this.monthField = monthField;
+        this.dayOfWeekField = dayOfWeekField;
+        this.yearField = yearField;
+        this.daysOfYear = new DaysOfYear[8];
+        this.searchHorizon = searchHorizon;
+        this.gapPolicy = gapPolicy;
+        this.overlapPolicy = overlapPolicy;
+        this.fixedPeriod = fixedPeriod();
+        this.fixedOffset = (hourField.firstValue() * 60 + minuteField.firstValue()) * 60 + secondField.firstValue();
+    }
+
+    private CronExpression(CronExpression other, int searchHorizon, GapPolicy gapPolicy, OverlapPolicy overlapPolicy) {
+        this.expr = other.expr;
+        this.secondField = other.secondField;
+        this.minuteField = other.minuteField;
+        this.hourField = other.hourField;
+        this.dayOfMonthField = other.dayOfMonthField;
+        this.monthField = other.monthField;
+        this.dayOfWeekField = other.dayOfWeekField;
+        this.yearField = other.yearField;
+        this.daysOfYear = other.daysOfYear;
+        this.satisfiability = other.satisfiability;
+        this.canonical = other.canonical;
+        this.statistics = other.statistics;
+        this.searchHorizon = searchHorizon;
+        this.gapPolicy = gapPolicy;
+        this.overlapPolicy = overlapPolicy;
+        this.fixedPeriod = other.fixedPeriod;
+        this.fixedOffset = other.fixedOffset;
+    }
+
+    /**
+     * An expression has a fixed period when all dates match and the times of day are evenly spaced with a spacing
+     * that divides the day, which makes each field above the first restricted one match all values (like {@code 0
+     * *&#47;5 * * * *}, or {@code 0 30 *&#47;2 * * *}).
+     *
+     * @return the period in seconds, or 0 if there is none
+     */
+    private int fixedPeriod() {
+        if (!yearField.matchesAll() || !monthField.matchesAll() || !dayOfMonthField.matchesAll() || !dayOfWeekField.matchesAll()) {
+            return 0;
+        }
+        if (secondField.countValues() > 1) {
+            return minuteField.matchesAll() && hourField.matchesAll() ? secondField.evenStep() : 0;
+        } else if (minuteField.countValues() > 1) {
+            return hourField.matchesAll() ? minuteField.evenStep() * 60 : 0;
+        }
+        return hourField.evenStep() * 3600;
+    }
+
+    static boolean isWhitespace(char c) {
+        // same as \s in regular expressions
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean containsFourDigits(CharSequence expr, int start, int end) {
+        int digits = 0;
+        for (int i = start; i < end && digits < 4; i++) {
+            char c = expr.charAt(i);
+            digits = c >= '0' && c <= '9' ? digits + 1 : 0;
+        }
+        return digits == 4;
     }
 
     public static CronExpression create(final String expr) {
@@ -163,11 +338,210 @@ public class CronExpression {
         return new CronExpression(expr, false);
     }
 
+    /**
+     * Creates an expression with seconds which may use 'H', see {@link #CronExpression(String, boolean, boolean,
+     * String)}.
+     */
+    public static CronExpression create(final String expr, String hashKey) {
+        return new CronExpression(expr, true, false, hashKey);
+    }
+
+    /**
+     * @return a copy of this expression searching the given number of years in the methods not given a barrier
+     */
+    public CronExpression withSearchHorizon(int years) {
+        if (years < 1) {
+            throw new IllegalArgumentException("Search horizon must be at least one year, got " + years);
+        }
+        return years == searchHorizon ? this : new CronExpression(this, years, gapPolicy, overlapPolicy);
+    }
+
+    public int getSearchHorizon() {
+        return searchHorizon;
+    }
+
+    /**
+     * @return a copy of this expression handling matching times skipped by a daylight saving gap as given, instead of
+     * {@link GapPolicy#SHIFT_FORWARD}
+     */
+    public CronExpression withGapPolicy(GapPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy is null");
+        }
+        return policy == gapPolicy ? this : new CronExpression(this, searchHorizon, policy, overlapPolicy);
+    }
+
+    public GapPolicy getGapPolicy() {
+        return gapPolicy;
+    }
+
+    /**
+     * @return a copy of this expression handling matching times repeated by a daylight saving overlap as given,
+     * instead of {@link OverlapPolicy#CRON}
+     */
+    public CronExpression withOverlapPolicy(OverlapPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy is null");
+        }
+        return policy == overlapPolicy ? this : new CronExpression(this, searchHorizon, gapPolicy, policy);
+    }
+
+    public OverlapPolicy getOverlapPolicy() {
+        return overlapPolicy;
+    }
+
+    private OverlapPolicy effectiveOverlapPolicy() {
+        if (overlapPolicy == OverlapPolicy.CRON) {
+            return hourField.matchesAll() ? OverlapPolicy.BOTH : OverlapPolicy.EARLIER;
+        }
+        return overlapPolicy;
+    }
+
+    /**
+     * Returns the time between consecutive matching times when it is always the same, e.g. 5 minutes for {@code 0
+     * *&#47;5 * * * *}, so that the expression can be run at a fixed rate instead of being planned time by time. The
+     * times are evenly spaced in wall-clock time: where the zone offset changes by an amount which is not a multiple of
+     * the period, as daylight saving time does for periods longer than an hour, the elapsed time differs around the
+     * change.
+     *
+     * @return the period, or {@code null} if the times are not evenly spaced
+     */
+    public Duration getFixedPeriod() {
+        return fixedPeriod == 0 ? null : Duration.standardSeconds(fixedPeriod);
+    }
+
+    /**
+     * Same as {@link #getFixedPeriod()} as a {@code java.time} duration, which does not need Joda-Time at run time.
+     */
+    public java.time.Duration getFixedDuration() {
+        return fixedPeriod == 0 ? null : java.time.Duration.ofSeconds(fixedPeriod);
+    }
+
+    /**
+     * Checks whether any time matches this expression at all, for the years allowed by the year field. Expressions
+     * like the 30th of february never match; searching them returns at once instead of scanning the whole search
+     * horizon. The check is made on first use, by evaluating the date fields for one year of each kind (leap year
+     * or not, starting on each day of the week) allowed by the year field.
+     */
+    public boolean isSatisfiable() {
+        int result = satisfiability;
+        if (result == 0) {
+            result = hasMatchingYear() ? 1 : -1;
+            satisfiability = result;
+        }
+        return result > 0;
+    }
+
+    /**
+     * Computes how often this expression fires from its fields. The times of a day are the product of the allowed
+     * hours, minutes and seconds, so their count and gaps follow from the gaps between the allowed values of each
+     * field. Which days match only depends on the kind of the year, see {@link #isSatisfiable()}, so the matching days
+     * are scanned for at most 14 years and the years allowed by the year field are then added up kind by kind.
+     */
+    public CronStatistics getStatistics() {
+        CronStatistics result = statistics;
+        if (result == null) {
+            result = computeStatistics();
+            statistics = result;
+        }
+        return result;
+    }
+
+    private CronStatistics computeStatistics() {
+        long timesPerDay = (long) hourField.countValues() * minuteField.countValues() * secondField.countValues();
+        // the gaps between times of the same day, and from the last time of a day to the first of the next
+        long minimumGap = Long.MAX_VALUE;
+        long maximumGap = -1;
+        int firstTime = 0;
+        int lastTime = 0;
+        if (timesPerDay > 0) {
+            int secondSpan = secondField.lastValue() - secondField.firstValue();
+            int minuteSpan = (minuteField.lastValue() - minuteField.firstValue()) * 60 + secondSpan;
+            firstTime = (hourField.firstValue() * 60 + minuteField.firstValue()) * 60 + secondField.firstValue();
+            lastTime = (hourField.lastValue() * 60 + minuteField.lastValue()) * 60 + secondField.lastValue();
+            long[] gaps = {secondField.minimumGap(), secondField.maximumGap(), minuteField.minimumGap() * 60L - secondSpan,
+                    minuteField.maximumGap() * 60L - secondSpan, hourField.minimumGap() * 3600L - minuteSpan,
+                    hourField.maximumGap() * 3600L - minuteSpan};
+            int[] counts = {secondField.countValues(), minuteField.countValues(), hourField.countValues()};
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 1) {
+                    minimumGap = Math.min(minimumGap, gaps[2 * i]);
+                    maximumGap = Math.max(maximumGap, gaps[2 * i + 1]);
+                }
+            }
+        }
+
+        // per kind of year: the number of matching days, the first and the last, and the smallest and largest gap
+        int[][] kinds = new int[14][];
+        long days = 0;
+        long matchingDays = 0;
+        int months = 0;
+        long minimumDayGap = Long.MAX_VALUE;
+        long maximumDayGap = -1;
+        long lastDay = Long.MIN_VALUE;
+        for (int year = yearField.firstValue(); year >= 0; year = yearField.nextValue(year + 1)) {
+            long firstDayOfYear = CalendarMath.epochDay(year, 1, 1);
+            int length = CalendarMath.isLeapYear(year) ? 366 : 365;
+            int kind = (length == 366 ? 7 : 0) + CalendarMath.dayOfWeek(firstDayOfYear) - 1;
+            if (kinds[kind] == null) {
+                DaysOfYear daysOfYear = new DaysOfYear(year, monthField, dayOfMonthField, dayOfWeekField);
+                kinds[kind] = new int[]{daysOfYear.count(1, length + 1), daysOfYear.nextDayOfYear(1), daysOfYear.previousDayOfYear(length),
+                        daysOfYear.minimumGap(), daysOfYear.maximumGap()};
+            }
+            int[] kindDays = kinds[kind];
+            days += length;
+            months += 12;
+            if (kindDays[0] > 0) {
+                matchingDays += kindDays[0];
+                if (lastDay != Long.MIN_VALUE) {
+                    long gap = firstDayOfYear + kindDays[1] - 1 - lastDay;
+                    minimumDayGap = Math.min(minimumDayGap, gap);
+                    maximumDayGap = Math.max(maximumDayGap, gap);
+                }
+                if (kindDays[0] > 1) {
+                    minimumDayGap = Math.min(minimumDayGap, kindDays[3]);
+                    maximumDayGap = Math.max(maximumDayGap, kindDays[4]);
+                }
+                lastDay = firstDayOfYear + kindDays[2] - 1;
+            }
+        }
+
+        if (timesPerDay == 0 || matchingDays == 0) {
+            return new CronStatistics(-1, -1, 0, 0);
+        }
+        if (maximumDayGap > 0) {
+            minimumGap = Math.min(minimumGap, minimumDayGap * CalendarMath.SECONDS_PER_DAY - (lastTime - firstTime));
+            maximumGap = Math.max(maximumGap, maximumDayGap * CalendarMath.SECONDS_PER_DAY - (lastTime - firstTime));
+        }
+        double times = (double) timesPerDay * matchingDays;
+        return new CronStatistics(maximumGap < 0 ? -1 : minimumGap, maximumGap, times / days, times / months);
+    }
+
+    private boolean hasMatchingYear() {
+        if (!secondField.hasValues() || !minuteField.hasValues() || !hourField.hasValues()) {
+            return false;
+        }
+        // which days match only depends on whether the year is a leap year and on which day of the week it starts
+        final int allKinds = (1 << 14) - 1;
+        int kindsSeen = 0;
+        for (int year = yearField.firstValue(); year >= 0 && kindsSeen != allKinds; year = yearField.nextValue(year + 1)) {
+            int kind = (CalendarMath.isLeapYear(year) ? 7 : 0) + CalendarMath.dayOfWeek(CalendarMath.epochDay(year, 1, 1)) - 1;
+            if ((kindsSeen & 1 << kind) == 0) {
+                kindsSeen |= 1 << kind;
+                if (new DaysOfYear(year, monthField, dayOfMonthField, dayOfWeekField).nextDayOfYear(1) >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public DateTime nextTimeAfter(DateTime afterTime) {
-        // will search for the next time within the next 8 years. If there is no
-        // time matching, an InvalidArgumentException will be thrown (it is very
-        // likely that the cron expression is invalid, like the February 30th).
-        return nextTimeAfter(afterTime, afterTime.plusYears(8));
+        // will search for the next time within the search horizon, 8 years by
+        // default. If there is no time matching, an InvalidArgumentException
+        // will be thrown (it is very likely that the cron expression is
+        // invalid, like the February 30th).
+        return nextTimeAfter(afterTime, afterTime.plusYears(searchHorizon));
     }
 
     public DateTime nextTimeAfter(DateTime afterTime, long durationInMillis) {
@@ -178,140 +552,970 @@ public class CronExpression {
     }
 
     public DateTime nextTimeAfter(DateTime afterTime, DateTime dateTimeBarrier) {
-        MutableDateTime nextTime = new MutableDateTime(afterTime);
-        nextTime.setMillisOfSecond(0);
-        nextTime.secondOfDay().add(1);
+        long nextTime = nextTimeAfter(afterTime.getMillis(), afterTime.getZone(), dateTimeBarrier.getMillis());
+        return new DateTime(nextTime, afterTime.getChronology());
+    }
 
-        nextYear(dateTimeBarrier, nextTime);
+    /**
+     * Allocation free variant of {@link #nextTimeAfter(DateTime)}: searches for the next time within the search horizon,
+     * evaluating the expression in the wall-clock time of the given zone.
+     *
+     * @param afterTime instant in milliseconds since the epoch
+     * @param zone      the zone to evaluate the expression in
+     * @return the next matching instant in milliseconds since the epoch
+     */
+    public long nextTimeAfter(long afterTime, DateTimeZone zone) {
+        ZoneOffsets offsets = ZoneOffsets.of(zone);
+        long afterLocal = offsets.localOf(afterTime);
+        return nextTimeAfter(afterTime, afterLocal, CalendarMath.plusYears(afterLocal, searchHorizon), zone, offsets);
+    }
 
-        return nextTime.toDateTime();
+    /**
+     * Allocation free variant of {@link #nextTimeAfter(DateTime, DateTime)}.
+     *
+     * @param afterTime       instant in milliseconds since the epoch
+     * @param zone            the zone to evaluate the expression in
+     * @param dateTimeBarrier instant in milliseconds since the epoch after which the search is given up
+     * @return the next matching instant in milliseconds since the epoch
+     */
+    public long nextTimeAfter(long afterTime, DateTimeZone zone, long dateTimeBarrier) {
+        ZoneOffsets offsets = ZoneOffsets.of(zone);
+        return nextTimeAfter(afterTime, offsets.localOf(afterTime), offsets.localOf(dateTimeBarrier), zone, offsets);
     }
 
-    private void nextYear(DateTime dateTimeBarrier, MutableDateTime nextTime) {
-        while (true) { // year
-            nextDayOfWeek(dateTimeBarrier, nextTime);
-            if (yearField.matches(nextTime.getYear())) {
-                break;
+    /**
+     * Like {@link #nextTimeAfter(long, DateTimeZone)}, but returns {@link #NO_TIME} instead of throwing when there is no
+     * matching time within the search horizon, so that exhausted or impossible expressions are cheap to probe.
+     */
+    public long tryNextTimeAfter(long afterTime, DateTimeZone zone) {
+        ZoneOffsets offsets = ZoneOffsets.of(zone);
+        long afterLocal = offsets.localOf(afterTime);
+        return noTimeIfBarrierReached(tryNextTimeAfter(afterTime, afterLocal, CalendarMath.plusYears(afterLocal, searchHorizon), offsets));
+    }
+
+    /**
+     * Like {@link #nextTimeAfter(long, DateTimeZone, long)}, but returns {@link #NO_TIME} instead of throwing when there
+     * is no matching time before the barrier.
+     */
+    public long tryNextTimeAfter(long afterTime, DateTimeZone zone, long dateTimeBarrier) {
+        ZoneOffsets offsets = ZoneOffsets.of(zone);
+        return noTimeIfBarrierReached(tryNextTimeAfter(afterTime, offsets.localOf(afterTime), offsets.localOf(dateTimeBarrier), offsets));
+    }
+
+    /**
+     * Same as {@link #tryNextTimeAfter(long, DateTimeZone, long)} in the zone of {@code offsets}.
+     */
+    long tryNextTimeAfter(long afterTime, ZoneOffsets offsets, long dateTimeBarrier) {
+        return noTimeIfBarrierReached(tryNextTimeAfter(afterTime, offsets.localOf(afterTime), offsets.localOf(dateTimeBarrier), offsets));
+    }
+
+    /**
+     * Adds {@code weight} to the count of the bucket of every time matching from {@code fromLocal} to before {@code
+     * toLocal}, which are mapped to instants by subtracting the constant {@code offset}. The times are not searched one
+     * by one: an hour whose times all fall in the same bucket adds the product of the number of allowed minutes and
+     * seconds, a minute the number of allowed seconds, and only minutes split between buckets go second by second.
+     *
+     * @param bucketsStart instant at which the bucket with index 0 starts
+     */
+    void addLocalTimes(long fromLocal, long toLocal, int offset, long bucketsStart, long bucketMillis, long weight, long[] counts) {
+        long from = fromLocal - offset;
+        long to = toLocal - offset;
+        int seconds = secondField.countValues();
+        long timesPerHour = (long) minuteField.countValues() * seconds;
+        int firstMinute = minuteField.firstValue();
+        int lastMinute = minuteField.lastValue();
+        int firstSecond = secondField.firstValue();
+        int lastSecond = secondField.lastValue();
+        long lastDay = Math.floorDiv(toLocal - 1, CalendarMath.MILLIS_PER_DAY);
+        for (long day = Math.floorDiv(fromLocal, CalendarMath.MILLIS_PER_DAY); day <= lastDay; day++) {
+            int date = CalendarMath.date(day);
+            int year = CalendarMath.year(date);
+            if (!yearField.matches(year) || !daysOfYear(year).matches(CalendarMath.dayOfYear(date))) {
+                continue;
             }
-            int year = yearField.nextValue(nextTime.getYear());
-            if (year < 0) {
-                throw new NoSuchElementException("No next execution time exists after " + nextTime);
-            } else {
-                nextTime.setYear(year);
+            long dayStart = day * CalendarMath.MILLIS_PER_DAY - offset;
+            for (int hour = hourField.firstValue(); hour >= 0; hour = hourField.nextValue(hour + 1)) {
+                long hourStart = dayStart + hour * 3600 * CalendarMath.MILLIS_PER_SECOND;
+                long first = hourStart + (firstMinute * 60 + firstSecond) * CalendarMath.MILLIS_PER_SECOND;
+                long last = hourStart + (lastMinute * 60 + lastSecond) * CalendarMath.MILLIS_PER_SECOND;
+                if (last < from || first >= to) {
+                    continue;
+                } else if (first >= from && last < to && (first - bucketsStart) / bucketMillis == (last - bucketsStart) / bucketMillis) {
+                    counts[(int) ((first - bucketsStart) / bucketMillis)] += weight * timesPerHour;
+                    continue;
+                }
+                for (int minute = firstMinute; minute >= 0; minute = minuteField.nextValue(minute + 1)) {
+                    long minuteStart = hourStart + minute * 60 * CalendarMath.MILLIS_PER_SECOND;
+                    first = minuteStart + firstSecond * CalendarMath.MILLIS_PER_SECOND;
+                    last = minuteStart + lastSecond * CalendarMath.MILLIS_PER_SECOND;
+                    if (last < from || first >= to) {
+                        continue;
+                    } else if (first >= from && last < to && (first - bucketsStart) / bucketMillis == (last - bucketsStart) / bucketMillis) {
+                        counts[(int) ((first - bucketsStart) / bucketMillis)] += weight * seconds;
+                        continue;
+                    }
+                    for (int second = firstSecond; second >= 0; second = secondField.nextValue(second + 1)) {
+                        long time = minuteStart + second * CalendarMath.MILLIS_PER_SECOND;
+                        if (time >= from && time < to) {
+                            counts[(int) ((time - bucketsStart) / bucketMillis)] += weight;
+                        }
+                    }
+                }
             }
-            nextTime.setMonthOfYear(1);
-            nextTime.setDayOfMonth(1);
-            nextTime.setTime(0, 0, 0, 0);
-            checkIfDateTimeBarrierIsReached(nextTime, dateTimeBarrier);
         }
     }
 
-    private void nextDayOfWeek(DateTime dateTimeBarrier, MutableDateTime nextTime) {
-        while (true) { // day of week
-            nextMonth(dateTimeBarrier, nextTime);
-            if (dayOfWeekField.matches(new LocalDate(nextTime))) {
-                break;
+    /**
+     * Fills {@code out[i]} with {@link #tryNextTimeAfter(long, DateTimeZone)} of {@code afterTimes[i]}, e.g. to replay a
+     * schedule over historical checkpoints. While the instants ascend the search sweeps forward: an instant before the
+     * previous result has that same result without a search, and once the year field is exhausted so are all later
+     * instants. A smaller instant starts the sweep over, so unsorted input gives the same results, only slower.
+     *
+     * @param afterTimes instants in milliseconds since the epoch, best in ascending order
+     * @param zone       the zone to evaluate the expression in
+     * @param out        receives the instants in milliseconds since the epoch, or {@link #NO_TIME}
+     */
+    public void tryNextTimesAfter(long[] afterTimes, DateTimeZone zone, long[] out) {
+        tryNextTimesAfter(afterTimes, ZoneOffsets.of(zone), out);
+    }
+
+    /**
+     * Same as {@link #tryNextTimesAfter(long[], DateTimeZone, long[])} in a {@code java.time} zone.
+     */
+    public void tryNextTimesAfter(long[] afterTimes, ZoneId zone, long[] out) {
+        tryNextTimesAfter(afterTimes, ZoneOffsets.of(zone), out);
+    }
+
+    private void tryNextTimesAfter(long[] afterTimes, ZoneOffsets offsets, long[] out) {
+        if (out.length < afterTimes.length) {
+            throw new IllegalArgumentException("Output of length " + out.length + " is too short for " + afterTimes.length + " instants");
+        }
+        boolean sweeping = false;
+        long previousAfter = 0;
+        long previousNext = 0;
+        for (int i = 0; i < afterTimes.length; i++) {
+            long afterTime = afterTimes[i];
+            long nextTime;
+            if (sweeping && afterTime >= previousAfter
+                    && (previousNext == NO_NEXT_TIME || previousNext != BARRIER_REACHED && afterTime < previousNext)) {
+                // nothing matches between the previous instant and its result
+                nextTime = previousNext;
+            } else {
+                long afterLocal = offsets.localOf(afterTime);
+                nextTime = tryNextTimeAfter(afterTime, afterLocal, CalendarMath.plusYears(afterLocal, searchHorizon), offsets);
+                sweeping = true;
+                previousAfter = afterTime;
+                previousNext = nextTime;
             }
-            LocalDate nextDate = dayOfWeekField.nextDate(new LocalDate(nextTime));
-            nextTime.setDate(nextDate.getYear(), nextDate.getMonthOfYear(), nextDate.getDayOfMonth());
-            nextTime.setTime(0, 0, 0, 0);
-            checkIfDateTimeBarrierIsReached(nextTime, dateTimeBarrier);
+            out[i] = noTimeIfBarrierReached(nextTime);
         }
     }
 
-    private void nextMonth(DateTime dateTimeBarrier, MutableDateTime nextTime) {
-        while (true) { // month
-            nextDayOfMonth(dateTimeBarrier, nextTime);
-            if (monthField.matches(nextTime.getMonthOfYear())) {
+    /**
+     * Same as {@link #tryNextTimeAfter(long, DateTimeZone)} from a start shared with other expressions, see {@link
+     * CronBatch}. The start is decomposed once for all of them; only close to a daylight saving transition, where the
+     * policies decide, is the full search run.
+     */
+    long tryNextTimeAfter(SearchStart start) {
+        long barrierLocal = start.barrierLocal(searchHorizon);
+        long nextLocal = nextLocalTime(start, barrierLocal);
+        if (nextLocal < 0) {
+            return noTimeIfBarrierReached(nextLocal);
+        }
+        ZoneOffsets offsets = start.offsets();
+        if (offsets.isRegular(start.afterLocal(), nextLocal)) {
+            return nextLocal - offsets.offsetAtLocal(nextLocal);
+        }
+        return noTimeIfBarrierReached(tryNextTimeAfter(start.afterTime(), start.afterLocal(), barrierLocal, offsets));
+    }
+
+    /**
+     * Searches backwards for the last time matching this expression before {@code beforeTime}, within the search
+     * horizon.
+     *
+     * @throws NoSuchElementException   if the expression has no time before {@code beforeTime}, e.g. because of the
+     *                                  year field
+     * @throws IllegalArgumentException if no time is found within the search horizon
+     */
+    public DateTime previousTimeBefore(DateTime beforeTime) {
+        return previousTimeBefore(beforeTime, beforeTime.minusYears(searchHorizon));
+    }
+
+    public DateTime previousTimeBefore(DateTime beforeTime, long durationInMillis) {
+        return previousTimeBefore(beforeTime, beforeTime.minus(durationInMillis));
+    }
+
+    public DateTime previousTimeBefore(DateTime beforeTime, DateTime dateTimeBarrier) {
+        long previousTime = previousTimeBefore(beforeTime.getMillis(), beforeTime.getZone(), dateTimeBarrier.getMillis());
+        return new DateTime(previousTime, beforeTime.getChronology());
+    }
+
+    /**
+     * Allocation free variant of {@link #previousTimeBefore(DateTime)}.
+     *
+     * @param beforeTime instant in milliseconds since the epoch
+     * @param zone       the zone to evaluate the expression in
+     * @return the last matching instant before {@code beforeTime} in milliseconds since the epoch
+     */
+    public long previousTimeBefore(long beforeTime, DateTimeZone zone) {
+        ZoneOffsets offsets = ZoneOffsets.of(zone);
+        long beforeLocal = offsets.localOf(beforeTime);
+        return previousTimeBefore(beforeTime, beforeLocal, CalendarMath.plusYears(beforeLocal, -searchHorizon), zone, offsets);
+    }
+
+    /**
+     * Allocation free variant of {@link #previousTimeBefore(DateTime, DateTime)}.
+     *
+     * @param beforeTime      instant in milliseconds since the epoch
+     * @param zone            the zone to evaluate the expression in
+     * @param dateTimeBarrier instant in milliseconds since the epoch before which the search is given up
+     * @return the last matching instant before {@code beforeTime} in milliseconds since the epoch
+     */
+    public long previousTimeBefore(long beforeTime, DateTimeZone zone, long dateTimeBarrier) {
+        ZoneOffsets offsets = ZoneOffsets.of(zone);
+        return previousTimeBefore(beforeTime, offsets.localOf(beforeTime), offsets.localOf(dateTimeBarrier), zone, offsets);
+    }
+
+    /**
+     * Like {@link #previousTimeBefore(long, DateTimeZone)}, but returns {@link #NO_TIME} instead of throwing when there
+     * is no matching time within the search horizon.
+     */
+    public long tryPreviousTimeBefore(long beforeTime, DateTimeZone zone) {
+        ZoneOffsets offsets = ZoneOffsets.of(zone);
+        long beforeLocal = offsets.localOf(beforeTime);
+        return noTimeIfBarrierReached(tryPreviousTimeBefore(beforeTime, beforeLocal, CalendarMath.plusYears(beforeLocal, -searchHorizon), offsets));
+    }
+
+    /**
+     * Like {@link #previousTimeBefore(long, DateTimeZone, long)}, but returns {@link #NO_TIME} instead of throwing when
+     * there is no matching time after the barrier.
+     */
+    public long tryPreviousTimeBefore(long beforeTime, DateTimeZone zone, long dateTimeBarrier) {
+        ZoneOffsets offsets = ZoneOffsets.of(zone);
+        return noTimeIfBarrierReached(tryPreviousTimeBefore(beforeTime, offsets.localOf(beforeTime), offsets.localOf(dateTimeBarrier), offsets));
+    }
+
+    /**
+     * Same as {@link #nextTimeAfter(DateTime)} for {@code java.time}, evaluated in the zone of {@code afterTime}. The
+     * search runs on the same parsed fields and the offsets are taken from the {@link ZoneId#getRules() rules} of the zone, so
+     * Joda-Time is not needed.
+     */
+    public ZonedDateTime nextTimeAfter(ZonedDateTime afterTime) {
+        long afterLocal = localMillis(afterTime.toLocalDateTime());
+        return nextTimeAfter(afterTime, afterLocal, CalendarMath.plusYears(afterLocal, searchHorizon));
+    }
+
+    public ZonedDateTime nextTimeAfter(ZonedDateTime afterTime, ZonedDateTime dateTimeBarrier) {
+        return nextTimeAfter(afterTime, localMillis(afterTime.toLocalDateTime()), localMillis(dateTimeBarrier.toLocalDateTime()));
+    }
+
+    /**
+     * Same as {@link #nextTimeAfter(long, DateTimeZone)} for {@code java.time}.
+     *
+     * @param afterTime the instant to search from
+     * @param zone      the zone to evaluate the expression in
+     * @return the next matching instant
+     */
+    public Instant nextTimeAfter(Instant afterTime, ZoneId zone) {
+        long afterMillis = floorMillis(afterTime.getEpochSecond(), afterTime.getNano());
+        long afterLocal = ZoneOffsets.of(zone).localOf(afterMillis);
+        return Instant.ofEpochMilli(nextTimeAfter(afterMillis, afterLocal, CalendarMath.plusYears(afterLocal, searchHorizon), zone));
+    }
+
+    /**
+     * Same as {@link #previousTimeBefore(DateTime)} for {@code java.time}, evaluated in the zone of {@code beforeTime}.
+     */
+    public ZonedDateTime previousTimeBefore(ZonedDateTime beforeTime) {
+        long beforeLocal = ceilMillis(beforeTime.toLocalDateTime().toEpochSecond(ZoneOffset.UTC), beforeTime.getNano());
+        return previousTimeBefore(beforeTime, beforeLocal, CalendarMath.plusYears(beforeLocal, -searchHorizon));
+    }
+
+    public ZonedDateTime previousTimeBefore(ZonedDateTime beforeTime, ZonedDateTime dateTimeBarrier) {
+        long beforeLocal = ceilMillis(beforeTime.toLocalDateTime().toEpochSecond(ZoneOffset.UTC), beforeTime.getNano());
+        return previousTimeBefore(beforeTime, beforeLocal, localMillis(dateTimeBarrier.toLocalDateTime()));
+    }
+
+    /**
+     * Same as {@link #previousTimeBefore(long, DateTimeZone)} for {@code java.time}.
+     *
+     * @param beforeTime the instant to search from
+     * @param zone       the zone to evaluate the expression in
+     * @return the last matching instant before {@code beforeTime}
+     */
+    public Instant previousTimeBefore(Instant beforeTime, ZoneId zone) {
+        long beforeMillis = ceilMillis(beforeTime.getEpochSecond(), beforeTime.getNano());
+        long beforeLocal = ZoneOffsets.of(zone).localOf(beforeMillis);
+        return Instant.ofEpochMilli(previousTimeBefore(beforeMillis, beforeLocal, CalendarMath.plusYears(beforeLocal, -searchHorizon), zone));
+    }
+
+    /**
+     * Counts the times matching this expression from {@code from} (inclusive) to {@code to} (exclusive), in the zone
+     * of {@code from}. The count is taken over wall-clock time without enumerating the times: the number of matching
+     * times of day is multiplied with the number of matching days, so the cost grows with the number of years in the
+     * interval rather than the number of times. Only close to daylight saving transitions, where the {@link GapPolicy}
+     * and {@link OverlapPolicy} move, merge or repeat times, are the times searched one by one, so that the count is
+     * the number of times {@link #nextTimeAfter(DateTime)} yields in the interval.
+     */
+    public long countBetween(DateTime from, DateTime to) {
+        return countBetween(from.getMillis(), to.getMillis(), from.getZone());
+    }
+
+    /**
+     * Allocation free variant of {@link #countBetween(DateTime, DateTime)}.
+     *
+     * @param from instant in milliseconds since the epoch, inclusive
+     * @param to   instant in milliseconds since the epoch, exclusive
+     * @param zone the zone to evaluate the expression in
+     * @return the number of matching times in the interval, 0 if it is empty
+     */
+    public long countBetween(long from, long to, DateTimeZone zone) {
+        return countBetween(from, to, ZoneOffsets.of(zone));
+    }
+
+    /**
+     * Same as {@link #countBetween(long, long, DateTimeZone)} for {@code java.time}.
+     *
+     * @param from the instant to count from, inclusive
+     * @param to   the instant to count to, exclusive
+     * @param zone the zone to evaluate the expression in
+     * @return the number of matching times in the interval, 0 if it is empty
+     */
+    public long countBetween(Instant from, Instant to, ZoneId zone) {
+        return countBetween(ceilMillis(from.getEpochSecond(), from.getNano()), ceilMillis(to.getEpochSecond(), to.getNano()),
+                ZoneOffsets.of(zone));
+    }
+
+    private long countBetween(long from, long to, ZoneOffsets offsets) {
+        if (to <= from || !isSatisfiable()) {
+            return 0;
+        }
+        long count = 0;
+        long start = from;
+        // around a transition the times of a gap or an overlap are moved or repeated by policy, elsewhere every
+        // wall-clock time is a single instant at the offset of its segment, the same split as CronLoad makes
+        for (int i = Math.max(offsets.transitionAt(from), 0); i < offsets.size(); i++) {
+            long delta = Math.abs(offsets.offsetAfter(i) - offsets.offsetBefore(i));
+            long guardStart = offsets.instant(i) - delta;
+            long guardEnd = offsets.instant(i) + delta;
+            if (guardStart >= to) {
                 break;
+            } else if (guardEnd <= start) {
+                continue;
             }
-            int month = monthField.nextValue(nextTime.getMonthOfYear());
-            if (month < 0) {
-                nextTime.year().add(1);
-                nextTime.setMonthOfYear(monthField.nextValue(1));
-            } else {
-                nextTime.setMonthOfYear(month);
+            if (guardStart > start) {
+                int offset = offsets.offsetAt(start);
+                count += countLocalBetween(start + offset, guardStart + offset);
+                start = guardStart;
             }
-            nextTime.setDayOfMonth(1);
-            nextTime.setTime(0, 0, 0, 0);
-            checkIfDateTimeBarrierIsReached(nextTime, dateTimeBarrier);
+            long end = Math.min(guardEnd, to);
+            for (long time = tryNextTimeAfter(start - 1, offsets, end); time != NO_TIME && time < end; time = tryNextTimeAfter(time, offsets, end)) {
+                count++;
+            }
+            start = end;
+        }
+        if (start < to) {
+            int offset = offsets.offsetAt(start);
+            count += countLocalBetween(start + offset, to + offset);
         }
+        return count;
     }
 
-    private void nextDayOfMonth(DateTime dateTimeBarrier, MutableDateTime nextTime) {
-        while (true) { // day of month
-            nextHour(nextTime);
-            if (dayOfMonthField.matches(new LocalDate(nextTime))) {
-                break;
-            }
+    private long countLocalBetween(long fromLocal, long toLocal) {
+        // times are whole seconds, count the seconds in [fromSecond, toSecond)
+        long fromSecond = -Math.floorDiv(-fromLocal, CalendarMath.MILLIS_PER_SECOND);
+        long toSecond = -Math.floorDiv(-toLocal, CalendarMath.MILLIS_PER_SECOND);
+        if (toSecond <= fromSecond) {
+            return 0;
+        }
+        long fromDay = Math.floorDiv(fromSecond, CalendarMath.SECONDS_PER_DAY);
+        long toDay = Math.floorDiv(toSecond, CalendarMath.SECONDS_PER_DAY);
+        long timesPerDay = (long) hourField.countValues() * minuteField.countValues() * secondField.countValues();
 
-            LocalDate nextDate = dayOfMonthField.nextDate(new LocalDate(nextTime));
-            nextTime.setDate(nextDate.getYear(), nextDate.getMonthOfYear(), nextDate.getDayOfMonth());
-            nextTime.setTime(0, 0, 0, 0);
-            checkIfDateTimeBarrierIsReached(nextTime, dateTimeBarrier);
+        long count = countDays(fromDay, toDay) * timesPerDay;
+        if (matchesDay(toDay)) {
+            count += countTimesBefore((int) (toSecond - toDay * CalendarMath.SECONDS_PER_DAY));
+        }
+        if (matchesDay(fromDay)) {
+            count -= countTimesBefore((int) (fromSecond - fromDay * CalendarMath.SECONDS_PER_DAY));
         }
+        return count;
     }
 
-    private void nextHour(MutableDateTime nextTime) {
-        while (true) { // hour
-            nextMinute(nextTime);
-            if (hourField.matches(nextTime.getHourOfDay())) {
-                break;
+    /**
+     * Iterates over the times matching this expression after {@code start}, in the zone of {@code start}. The iterator
+     * yields the same times as calling {@link #nextTimeAfter(DateTime)} with each previous result, but keeps its
+     * position between calls, so that the next time within the same day only advances the second, minute or hour.
+     * Iteration ends where {@link #nextTimeAfter(DateTime)} would throw, i.e. when no time exists within the search
+     * horizon of the previous one.
+     */
+    public Iterator<DateTime> iterator(DateTime start) {
+        return new FireTimeIterator(start);
+    }
+
+    /**
+     * @return an ordered, possibly infinite, stream of the times matching this expression after {@code start}
+     * @see #iterator(DateTime)
+     */
+    public Stream<DateTime> stream(DateTime start) {
+        int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(start), characteristics), false);
+    }
+
+    private static long noTimeIfBarrierReached(long time) {
+        return time == BARRIER_REACHED ? NO_TIME : time;
+    }
+
+    private long nextTimeAfter(long afterTime, long afterLocal, long barrierLocal, DateTimeZone zone, ZoneOffsets offsets) {
+        long nextTime = tryNextTimeAfter(afterTime, afterLocal, barrierLocal, offsets);
+        if (nextTime == NO_NEXT_TIME) {
+            throw new NoSuchElementException("No next execution time exists after " + new DateTime(afterTime, zone));
+        } else if (nextTime == BARRIER_REACHED) {
+            throw new IllegalArgumentException("No next execution time could be determined that is before the limit of "
+                    + new DateTime(barrierLocal - offsets.offsetAtLocal(barrierLocal), zone));
+        }
+        return nextTime;
+    }
+
+    private long tryNextTimeAfter(long afterTime, long afterLocal, long barrierLocal, ZoneOffsets offsets) {
+        return localTimes.nextTime(afterTime, afterLocal, barrierLocal, offsets, gapPolicy, effectiveOverlapPolicy());
+    }
+
+    /**
+     * Searches for the first matching wall-clock time after {@code afterLocal}. All state is kept in primitives: the
+     * date is packed by {@link CalendarMath}, and each field is advanced from the year and down, resetting the fields
+     * below it whenever it moves. Month and day are found together by a scan of the matching {@link DaysOfYear}.
+     *
+     * @return the local time in millis, {@link #NO_NEXT_TIME} if the year field is exhausted, or {@link
+     * #BARRIER_REACHED} if the date moved past {@code barrierLocal} or nothing ever matches
+     */
+    private long nextLocalTime(long afterLocal, long barrierLocal) {
+        if (!isSatisfiable()) {
+            return BARRIER_REACHED;
+        }
+        long epochSecond = Math.floorDiv(afterLocal, CalendarMath.MILLIS_PER_SECOND) + 1;
+        if (fixedPeriod != 0) {
+            long nextLocal = nextFixedLocalTime(epochSecond, barrierLocal);
+            if (nextLocal != NO_NEXT_TIME) {
+                return nextLocal;
+            }
+        }
+        long epochDay = Math.floorDiv(epochSecond, CalendarMath.SECONDS_PER_DAY);
+        return nextLocalTime(CalendarMath.date(epochDay), (int) (epochSecond - epochDay * CalendarMath.SECONDS_PER_DAY), barrierLocal);
+    }
+
+    /**
+     * Same as {@link #nextLocalTime(long, long)} from the shared wall-clock time of {@code start}.
+     */
+    private long nextLocalTime(SearchStart start, long barrierLocal) {
+        if (!isSatisfiable()) {
+            return BARRIER_REACHED;
+        }
+        if (fixedPeriod != 0) {
+            long nextLocal = nextFixedLocalTime(start.epochSecond(), barrierLocal);
+            if (nextLocal != NO_NEXT_TIME) {
+                return nextLocal;
             }
-            int hour = hourField.nextValue(nextTime.getHourOfDay());
-            if (hour < 0) {
-                nextTime.dayOfYear().add(1);
-                nextTime.setHourOfDay(hourField.nextValue(0));
+        }
+        return nextLocalTime(start.date(), start.secondOfDay(), barrierLocal);
+    }
+
+    /**
+     * The period divides the day, so the times are evenly spaced from the start of any day.
+     *
+     * @return the first time at or after {@code epochSecond}, {@link #BARRIER_REACHED}, or {@link #NO_NEXT_TIME} if it
+     * is outside the years, which the full search then handles
+     */
+    private long nextFixedLocalTime(long epochSecond, long barrierLocal) {
+        long nextSecond = fixedOffset + Math.floorDiv(epochSecond - fixedOffset + fixedPeriod - 1, (long) fixedPeriod) * fixedPeriod;
+        if (!isWithinYears(nextSecond)) {
+            return NO_NEXT_TIME;
+        }
+        long nextDay = Math.floorDiv(nextSecond, CalendarMath.SECONDS_PER_DAY);
+        if (nextDay != Math.floorDiv(epochSecond, CalendarMath.SECONDS_PER_DAY)
+                && nextDay * CalendarMath.MILLIS_PER_DAY > barrierLocal) {
+            return BARRIER_REACHED;
+        }
+        return nextSecond * CalendarMath.MILLIS_PER_SECOND;
+    }
+
+    /**
+     * The field by field search of {@link #nextLocalTime(long, long)}, from the first second to check: {@code
+     * secondOfDay} of the packed {@code date}.
+     */
+    private long nextLocalTime(int date, int secondOfDay, long barrierLocal) {
+        int hour = secondOfDay / 3600;
+        int minute = secondOfDay / 60 % 60;
+        int second = secondOfDay % 60;
+
+        while (true) {
+            boolean dateChanged = true;
+            int year = CalendarMath.year(date);
+            if (!yearField.matches(year)) {
+                year = yearField.nextValue(year);
+                if (year < 0) {
+                    return NO_NEXT_TIME;
+                }
+                date = CalendarMath.date(year, 1, 1);
+            } else if (!daysOfYear(year).matches(CalendarMath.dayOfYear(date))) {
+                int dayOfYear = daysOfYear(year).nextDayOfYear(CalendarMath.dayOfYear(date));
+                date = dayOfYear < 0 ? CalendarMath.date(year + 1, 1, 1) : CalendarMath.dateOfYear(year, dayOfYear);
             } else {
-                nextTime.setHourOfDay(hour);
+                dateChanged = false;
+                if (!hourField.matches(hour)) {
+                    int nextHour = hourField.nextValue(hour);
+                    if (nextHour < 0) {
+                        date = CalendarMath.nextDay(date);
+                        hour = hourField.firstValue();
+                    } else {
+                        hour = nextHour;
+                    }
+                    minute = minuteField.firstValue();
+                    second = secondField.firstValue();
+                } else if (!minuteField.matches(minute)) {
+                    int nextMinute = minuteField.nextValue(minute);
+                    if (nextMinute < 0) {
+                        if (++hour == 24) {
+                            date = CalendarMath.nextDay(date);
+                            hour = 0;
+                        }
+                        minute = minuteField.firstValue();
+                    } else {
+                        minute = nextMinute;
+                    }
+                    second = secondField.firstValue();
+                } else if (!secondField.matches(second)) {
+                    int nextSecond = secondField.nextValue(second);
+                    if (nextSecond < 0) {
+                        if (++minute == 60) {
+                            minute = 0;
+                            if (++hour == 24) {
+                                date = CalendarMath.nextDay(date);
+                                hour = 0;
+                            }
+                        }
+                        second = secondField.firstValue();
+                    } else {
+                        second = nextSecond;
+                    }
+                } else {
+                    return CalendarMath.localMillis(date, hour, minute, second);
+                }
+            }
+
+            if (dateChanged) {
+                hour = hourField.firstValue();
+                minute = minuteField.firstValue();
+                second = secondField.firstValue();
+                if (CalendarMath.epochDay(date) * CalendarMath.MILLIS_PER_DAY > barrierLocal) {
+                    return BARRIER_REACHED;
+                }
             }
-            nextTime.minuteOfHour().set(0);
-            nextTime.secondOfMinute().set(0);
         }
     }
 
-    private void nextMinute(MutableDateTime nextTime) {
-        while (true) { // minute
-            nextSecond(nextTime);
-            if (minuteField.matches(nextTime.getMinuteOfHour())) {
-                break;
+    private long previousTimeBefore(long beforeTime, long beforeLocal, long barrierLocal, DateTimeZone zone, ZoneOffsets offsets) {
+        long previousTime = tryPreviousTimeBefore(beforeTime, beforeLocal, barrierLocal, offsets);
+        if (previousTime == NO_NEXT_TIME) {
+            throw new NoSuchElementException("No previous execution time exists before " + new DateTime(beforeTime, zone));
+        } else if (previousTime == BARRIER_REACHED) {
+            throw new IllegalArgumentException("No previous execution time could be determined that is after the limit of "
+                    + new DateTime(barrierLocal - offsets.offsetAtLocal(barrierLocal), zone));
+        }
+        return previousTime;
+    }
+
+    private long tryPreviousTimeBefore(long beforeTime, long beforeLocal, long barrierLocal, ZoneOffsets offsets) {
+        return localTimes.previousTime(beforeTime, beforeLocal, barrierLocal, offsets, gapPolicy, effectiveOverlapPolicy());
+    }
+
+    private ZonedDateTime nextTimeAfter(ZonedDateTime afterTime, long afterLocal, long barrierLocal) {
+        long afterMillis = floorMillis(afterTime.toEpochSecond(), afterTime.getNano());
+        long nextTime = nextTimeAfter(afterMillis, afterLocal, barrierLocal, afterTime.getZone());
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(nextTime), afterTime.getZone());
+    }
+
+    private ZonedDateTime previousTimeBefore(ZonedDateTime beforeTime, long beforeLocal, long barrierLocal) {
+        long beforeMillis = ceilMillis(beforeTime.toEpochSecond(), beforeTime.getNano());
+        long previousTime = previousTimeBefore(beforeMillis, beforeLocal, barrierLocal, beforeTime.getZone());
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(previousTime), beforeTime.getZone());
+    }
+
+    private long nextTimeAfter(long afterTime, long afterLocal, long barrierLocal, ZoneId zone) {
+        long nextTime = tryNextTimeAfter(afterTime, afterLocal, barrierLocal, ZoneOffsets.of(zone));
+        if (nextTime == NO_NEXT_TIME) {
+            throw new NoSuchElementException("No next execution time exists after " + Instant.ofEpochMilli(afterTime).atZone(zone));
+        } else if (nextTime == BARRIER_REACHED) {
+            throw new IllegalArgumentException("No next execution time could be determined that is before the limit of "
+                    + ZonedDateTime.of(toLocalDateTime(barrierLocal), zone));
+        }
+        return nextTime;
+    }
+
+    private long previousTimeBefore(long beforeTime, long beforeLocal, long barrierLocal, ZoneId zone) {
+        long previousTime = tryPreviousTimeBefore(beforeTime, beforeLocal, barrierLocal, ZoneOffsets.of(zone));
+        if (previousTime == NO_NEXT_TIME) {
+            throw new NoSuchElementException("No previous execution time exists before " + Instant.ofEpochMilli(beforeTime).atZone(zone));
+        } else if (previousTime == BARRIER_REACHED) {
+            throw new IllegalArgumentException("No previous execution time could be determined that is after the limit of "
+                    + ZonedDateTime.of(toLocalDateTime(barrierLocal), zone));
+        }
+        return previousTime;
+    }
+
+    private static long localMillis(LocalDateTime dateTime) {
+        return floorMillis(dateTime.toEpochSecond(ZoneOffset.UTC), dateTime.getNano());
+    }
+
+    private static LocalDateTime toLocalDateTime(long local) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(local, CalendarMath.MILLIS_PER_SECOND),
+                (int) Math.floorMod(local, CalendarMath.MILLIS_PER_SECOND) * 1000000, ZoneOffset.UTC);
+    }
+
+    private static long floorMillis(long epochSecond, int nano) {
+        return epochSecond * CalendarMath.MILLIS_PER_SECOND + nano / 1000000;
+    }
+
+    /**
+     * Rounds up, so that a matching second is not taken as before an instant a fraction of a millisecond after it.
+     */
+    private static long ceilMillis(long epochSecond, int nano) {
+        return epochSecond * CalendarMath.MILLIS_PER_SECOND + (nano + 999999) / 1000000;
+    }
+
+    /**
+     * Mirror of {@link #nextLocalTime(long, long)}: searches for the last matching wall-clock time before {@code
+     * beforeLocal}, moving each field backwards from the year and down, and setting the fields below it to their last
+     * value whenever it moves.
+     *
+     * @return the local time in millis, {@link #NO_NEXT_TIME} if the year field is exhausted, or {@link
+     * #BARRIER_REACHED} if the date moved before {@code barrierLocal} or nothing ever matches
+     */
+    private long previousLocalTime(long beforeLocal, long barrierLocal) {
+        if (!isSatisfiable()) {
+            return BARRIER_REACHED;
+        }
+        long epochSecond = Math.floorDiv(beforeLocal - 1, CalendarMath.MILLIS_PER_SECOND);
+        if (fixedPeriod != 0) {
+            long previousSecond = fixedOffset + Math.floorDiv(epochSecond - fixedOffset, (long) fixedPeriod) * fixedPeriod;
+            if (isWithinYears(previousSecond)) {
+                long previousDay = Math.floorDiv(previousSecond, CalendarMath.SECONDS_PER_DAY);
+                if (previousDay != Math.floorDiv(epochSecond, CalendarMath.SECONDS_PER_DAY)
+                        && (previousDay + 1) * CalendarMath.MILLIS_PER_DAY <= barrierLocal) {
+                    return BARRIER_REACHED;
+                }
+                return previousSecond * CalendarMath.MILLIS_PER_SECOND;
             }
-            int minute = minuteField.nextValue(nextTime.getMinuteOfHour());
-            if (minute < 0) {
-                nextTime.hourOfDay().add(1);
-                nextTime.setMinuteOfHour(minuteField.nextValue(0));
+        }
+        long epochDay = Math.floorDiv(epochSecond, CalendarMath.SECONDS_PER_DAY);
+        int secondOfDay = (int) (epochSecond - epochDay * CalendarMath.SECONDS_PER_DAY);
+
+        int date = CalendarMath.date(epochDay);
+        int hour = secondOfDay / 3600;
+        int minute = secondOfDay / 60 % 60;
+        int second = secondOfDay % 60;
+
+        while (true) {
+            boolean dateChanged = true;
+            int year = CalendarMath.year(date);
+            if (!yearField.matches(year)) {
+                year = yearField.previousValue(year);
+                if (year < 0) {
+                    return NO_NEXT_TIME;
+                }
+                date = CalendarMath.date(year, 12, 31);
+            } else if (!daysOfYear(year).matches(CalendarMath.dayOfYear(date))) {
+                int dayOfYear = daysOfYear(year).previousDayOfYear(CalendarMath.dayOfYear(date));
+                date = dayOfYear < 0 ? CalendarMath.date(year - 1, 12, 31) : CalendarMath.dateOfYear(year, dayOfYear);
             } else {
-                nextTime.setMinuteOfHour(minute);
+                dateChanged = false;
+                if (!hourField.matches(hour)) {
+                    int previousHour = hourField.previousValue(hour);
+                    if (previousHour < 0) {
+                        date = CalendarMath.previousDay(date);
+                        hour = hourField.lastValue();
+                    } else {
+                        hour = previousHour;
+                    }
+                    minute = minuteField.lastValue();
+                    second = secondField.lastValue();
+                } else if (!minuteField.matches(minute)) {
+                    int previousMinute = minuteField.previousValue(minute);
+                    if (previousMinute < 0) {
+                        if (--hour < 0) {
+                            date = CalendarMath.previousDay(date);
+                            hour = 23;
+                        }
+                        minute = minuteField.lastValue();
+                    } else {
+                        minute = previousMinute;
+                    }
+                    second = secondField.lastValue();
+                } else if (!secondField.matches(second)) {
+                    int previousSecond = secondField.previousValue(second);
+                    if (previousSecond < 0) {
+                        if (--minute < 0) {
+                            minute = 59;
+                            if (--hour < 0) {
+                                date = CalendarMath.previousDay(date);
+                                hour = 23;
+                            }
+                        }
+                        second = secondField.lastValue();
+                    } else {
+                        second = previousSecond;
+                    }
+                } else {
+                    return CalendarMath.localMillis(date, hour, minute, second);
+                }
+            }
+
+            if (dateChanged) {
+                hour = hourField.lastValue();
+                minute = minuteField.lastValue();
+                second = secondField.lastValue();
+                if ((CalendarMath.epochDay(date) + 1) * CalendarMath.MILLIS_PER_DAY <= barrierLocal) {
+                    return BARRIER_REACHED;
+                }
             }
-            nextTime.secondOfMinute().set(0);
         }
     }
 
-    private void nextSecond(MutableDateTime nextTime) {
-        while (true) { // second
-            if (secondField.matches(nextTime.getSecondOfMinute())) {
-                break;
+    /**
+     * @return the number of days in {@code [fromDay, toDay)} matching the date fields
+     */
+    private long countDays(long fromDay, long toDay) {
+        if (toDay <= fromDay) {
+            return 0;
+        }
+        int from = CalendarMath.date(fromDay);
+        int to = CalendarMath.date(toDay);
+        long count = 0;
+        for (int year = yearField.nextValue(CalendarMath.year(from)); year >= 0 && year <= CalendarMath.year(to);
+             year = yearField.nextValue(year + 1)) {
+            int fromDayOfYear = year == CalendarMath.year(from) ? CalendarMath.dayOfYear(from) : 1;
+            int toDayOfYear = year == CalendarMath.year(to) ? CalendarMath.dayOfYear(to) : CalendarMath.isLeapYear(year) ? 367 : 366;
+            count += daysOfYear(year).count(fromDayOfYear, toDayOfYear);
+        }
+        return count;
+    }
+
+    private boolean matchesDay(long epochDay) {
+        int date = CalendarMath.date(epochDay);
+        int year = CalendarMath.year(date);
+        return yearField.matches(year) && daysOfYear(year).matches(CalendarMath.dayOfYear(date));
+    }
+
+    /**
+     * @return the number of matching times of day before {@code secondOfDay}
+     */
+    private long countTimesBefore(int secondOfDay) {
+        int hour = secondOfDay / 3600;
+        int minute = secondOfDay / 60 % 60;
+        int second = secondOfDay % 60;
+        int seconds = secondField.countValues();
+        long count = (long) hourField.countValuesBefore(hour) * minuteField.countValues() * seconds;
+        if (hourField.matches(hour)) {
+            count += minuteField.countValuesBefore(minute) * seconds;
+            if (minuteField.matches(minute)) {
+                count += secondField.countValuesBefore(second);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return whether the local epoch second is within the years of the year field, which is all of them for
+     * expressions with a fixed period
+     */
+    private static boolean isWithinYears(long epochSecond) {
+        return epochSecond >= FIRST_YEAR_SECOND && epochSecond < END_YEAR_SECOND;
+    }
+
+    private DaysOfYear daysOfYear(int year) {
+        DaysOfYear days = daysOfYear[year & 7];
+        if (days == null || days.year() != year) {
+            days = new DaysOfYear(year, monthField, dayOfMonthField, dayOfWeekField);
+            daysOfYear[year & 7] = days;
+        }
+        return days;
+    }
+
+    /**
+     * Keeps the wall-clock position of the last time found. The next time on the same day is found by stepping the
+     * time fields from that position; only when the day is exhausted, or the position had to be moved because the time
+     * fell in a daylight saving gap, is the full search run.
+     */
+    private final class FireTimeIterator implements Iterator<DateTime> {
+        private final Chronology chronology;
+        private final ZoneOffsets offsets;
+        private long previous;
+        private long previousLocal;
+        private boolean positioned;
+        private long dayLocal;
+        private int hour;
+        private int minute;
+        private int second;
+        private DateTime next;
+        private boolean exhausted;
+
+        FireTimeIterator(DateTime start) {
+            chronology = start.getChronology();
+            offsets = ZoneOffsets.of(start.getZone());
+            previous = start.getMillis();
+            previousLocal = offsets.localOf(previous);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !exhausted) {
+                long nextTime = NO_NEXT_TIME;
+                if (positioned) {
+                    long nextLocal = stepLocalTime();
+                    // close to a daylight saving transition the policies decide, leave that to tryNextTimeAfter
+                    if (nextLocal != NO_NEXT_TIME && offsets.isRegular(previousLocal, nextLocal)) {
+                        nextTime = nextLocal - offsets.offsetAtLocal(nextLocal);
+                    }
+                }
+                if (nextTime == NO_NEXT_TIME) {
+                    nextTime = tryNextTimeAfter(previous, previousLocal, CalendarMath.plusYears(previousLocal, searchHorizon), offsets);
+                    if (nextTime < 0) {
+                        exhausted = true;
+                        return false;
+                    }
+                }
+                previous = nextTime;
+                previousLocal = offsets.localOf(nextTime);
+                position(previousLocal);
+                positioned = true;
+                next = new DateTime(nextTime, chronology);
+            }
+            return next != null;
+        }
+
+        @Override
+        public DateTime next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DateTime result = next;
+            next = null;
+            return result;
+        }
+
+        /**
+         * @return the next matching time on the same day, or {@link #NO_NEXT_TIME} if there is none
+         */
+        private long stepLocalTime() {
+            int nextSecond = secondField.nextValue(second + 1);
+            if (nextSecond < 0) {
+                int nextMinute = minuteField.nextValue(minute + 1);
+                if (nextMinute < 0) {
+                    int nextHour = hourField.nextValue(hour + 1);
+                    if (nextHour < 0) {
+                        return NO_NEXT_TIME;
+                    }
+                    hour = nextHour;
+                    nextMinute = minuteField.firstValue();
+                }
+                minute = nextMinute;
+                nextSecond = secondField.firstValue();
             }
+            second = nextSecond;
+            return dayLocal + ((hour * 60L + minute) * 60L + second) * CalendarMath.MILLIS_PER_SECOND;
+        }
+
+        private void position(long local) {
+            long secondOfDay = Math.floorMod(local, CalendarMath.MILLIS_PER_DAY) / CalendarMath.MILLIS_PER_SECOND;
+            dayLocal = local - secondOfDay * CalendarMath.MILLIS_PER_SECOND;
+            hour = (int) (secondOfDay / 3600);
+            minute = (int) (secondOfDay / 60 % 60);
+            second = (int) (secondOfDay % 60);
+        }
+    }
+
+    SimpleField getSecondField() {
+        return secondField;
+    }
+
+    SimpleField getMinuteField() {
+        return minuteField;
+    }
+
+    SimpleField getHourField() {
+        return hourField;
+    }
+
+    DayOfMonthField getDayOfMonthField() {
+        return dayOfMonthField;
+    }
+
+    SimpleField getMonthField() {
+        return monthField;
+    }
+
+    DayOfWeekField getDayOfWeekField() {
+        return dayOfWeekField;
+    }
 
-            int second = secondField.nextValue(nextTime.getSecondOfMinute());
+    SimpleField getYearField() {
+        return yearField;
+    }
 
-            if (second < 0) {
-                nextTime.minuteOfDay().add(1);
-                nextTime.setSecondOfMinute(secondField.nextValue(0));
+    /**
+     * Renders the expression from its parsed fields, so that expressions matching the same times through the same
+     * values and rules give the same string, e.g. {@code 0 0 * * * *} for {@code 0 0 0-23 * * *} and {@code 0 0 *&#47;1
+     * * * ?}. Fields allowing every value are written as '*' (also for '?'), other values as a step like {@code
+     * 0/15}, as ranges or one by one, followed by the day rules in sorted order. The seconds field is always present,
+     * the year field only when it is restricted, and days of the week are written by name, so the string parses back
+     * to an equal expression whether or not the week starts on Sunday.
+     * <p>
+     * Expressions reaching the same dates through different rules, like {@code L} and {@code 31} with only January
+     * allowed, are not detected as equal.
+     */
+    public String toCanonicalString() {
+        String result = canonical;
+        if (result == null) {
+            StringBuilder sb = new StringBuilder();
+            BasicField[] fields = {secondField, minuteField, hourField, dayOfMonthField, monthField, dayOfWeekField};
+            for (BasicField field : fields) {
+                field.appendCanonical(sb);
+                sb.append(' ');
+            }
+            if (yearField.matchesAll()) {
+                sb.setLength(sb.length() - 1);
             } else {
-                nextTime.setSecondOfMinute(second);
+                yearField.appendCanonical(sb);
             }
+            result = sb.toString();
+            canonical = result;
         }
+        return result;
     }
 
-    private static void checkIfDateTimeBarrierIsReached(ReadableInstant nextTime, DateTime dateTimeBarrier) {
-        if (nextTime.isAfter(dateTimeBarrier)) {
-            throw new IllegalArgumentException("No next execution time could be determined that is before the limit of " + dateTimeBarrier);
+    /**
+     * Expressions are equal when they have the same {@link #toCanonicalString() canonical form}, search horizon and
+     * daylight saving policies, in which case they give the same results everywhere, so they can share a single evaluation.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
         }
+        if (!(o instanceof CronExpression)) {
+            return false;
+        }
+        CronExpression other = (CronExpression) o;
+        return searchHorizon == other.searchHorizon && gapPolicy == other.gapPolicy && overlapPolicy == other.overlapPolicy
+                && toCanonicalString().equals(other.toCanonicalString());
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * toCanonicalString().hashCode() + searchHorizon) * 31 + gapPolicy.ordinal() * 4 + overlapPolicy.ordinal();
     }
 
     @Override
     public String toString() {
-        return String.format("%s<%s>", getClass().getSimpleName(), expr);
+        return String.format("%s<%s>", getClass().getSimpleName(), expr != null ? expr : toCanonicalString());
     }
 }
@@ -0,0 +1,166 @@
+package fc.cron;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread safe cache of parsed expressions, so that schedules shared by many jobs are parsed once and share a
+ * single {@link CronExpression} instance. Expressions are keyed on their text with whitespace collapsed and letters in
+ * upper case, together with the seconds and week start flags.
+ * <p>
+ * Lookups of cached expressions do not lock. When the cache grows beyond its maximum size, entries are evicted with
+ * the clock (second chance) algorithm: an entry that has been used since the clock hand last passed it is kept for
+ * another round, so frequently used expressions stay cached.
+ */
+public class CronExpressionCache {
+
+    private final int maximumSize;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private final Object evictionLock = new Object();
+    private Iterator<Map.Entry<String, Entry>> clockHand;
+
+    public CronExpressionCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive, got " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    public CronExpression create(final String expr) {
+        return get(expr, true, false);
+    }
+
+    public CronExpression createWithoutSeconds(final String expr) {
+        return get(expr, false, false);
+    }
+
+    /**
+     * Returns the shared expression for the given text and flags, parsing it on the first request.
+     *
+     * @throws IllegalArgumentException if the expression is invalid, in which case nothing is cached
+     * @see CronExpression#CronExpression(String, boolean, boolean)
+     */
+    public CronExpression get(final String expr, boolean shouldHaveSeconds, boolean weekStartsSunday) {
+        if (expr == null) {
+            throw new IllegalArgumentException("expr is null"); //$NON-NLS-1$
+        }
+
+        String key = key(expr, shouldHaveSeconds, weekStartsSunday);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            // read before writing so that hits on a hot entry do not keep dirtying its cache line
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            hitCount.incrementAndGet();
+            return entry.expression;
+        }
+
+        missCount.incrementAndGet();
+        Entry created = new Entry(new CronExpression(key.substring(2), shouldHaveSeconds, weekStartsSunday));
+        Entry existing = entries.putIfAbsent(key, created);
+        if (existing != null) {
+            // parsed concurrently by another thread, keep the instance canonical
+            existing.referenced = true;
+            return existing.expression;
+        }
+        if (size.incrementAndGet() > maximumSize) {
+            evict();
+        }
+        return created.expression;
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            while (size.get() > maximumSize) {
+                if (clockHand == null || !clockHand.hasNext()) {
+                    clockHand = entries.entrySet().iterator();
+                    if (!clockHand.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<String, Entry> candidate = clockHand.next();
+                Entry entry = candidate.getValue();
+                if (entry.referenced) {
+                    entry.referenced = false;
+                } else if (entries.remove(candidate.getKey(), entry)) {
+                    size.decrementAndGet();
+                    evictionCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the flags followed by the expression with runs of whitespace replaced by a single space and letters in
+     * upper case
+     */
+    private static String key(String expr, boolean shouldHaveSeconds, boolean weekStartsSunday) {
+        StringBuilder sb = new StringBuilder(expr.length() + 2);
+        sb.append(shouldHaveSeconds ? 'S' : '-').append(weekStartsSunday ? 'U' : '-');
+        boolean whitespace = false;
+        for (int i = 0; i < expr.length(); i++) {
+            char c = expr.charAt(i);
+            if (CronExpression.isWhitespace(c)) {
+                whitespace = true;
+                continue;
+            }
+            if (whitespace && sb.length() > 2) {
+                sb.append(' ');
+            }
+            whitespace = false;
+            sb.append(c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c);
+        }
+        return sb.toString();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CronExpressionCache{");
+        sb.append("size=").append(size());
+        sb.append(", maximumSize=").append(maximumSize);
+        sb.append(", hits=").append(getHitCount());
+        sb.append(", misses=").append(getMissCount());
+        sb.append(", evictions=").append(getEvictionCount());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static final class Entry {
+        final CronExpression expression;
+        volatile boolean referenced;
+
+        Entry(CronExpression expression) {
+            this.expression = expression;
+        }
+    }
+}
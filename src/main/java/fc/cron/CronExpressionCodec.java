@@ -0,0 +1,347 @@
+package fc.cron;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of parsed expressions, so that they can be stored and shipped without their source text and
+ * decoded without parsing. An expression without years or day rules takes 30 bytes:
+ *
+ * <pre>
+ *   version        1 byte, {@link #VERSION}
+ *   flags          1 byte: week starts Sunday, years given, search horizon given, gap policy (2 bits),
+ *                  overlap policy (2 bits)
+ *   search horizon 4 bytes, if given
+ *   seconds        8 bytes, one bit per allowed value starting at the first value of the field
+ *   minutes        8 bytes
+ *   hours          3 bytes
+ *   days of month  4 bytes
+ *   months         2 bytes
+ *   days of week   1 byte, Monday first
+ *   years          if given, the offset of the first allowed year from 1970, the number of bytes that follow
+ *                  and the bits from the first allowed year on
+ *   day rules      the number of day of month rules, the rules, then the same for the day of week rules, each an
+ *                  opcode followed by its operands
+ * </pre>
+ *
+ * Multi-byte values are big-endian, bits are numbered from the least significant bit of the first byte. The source
+ * text is not kept: {@link CronExpression#toString()} of a decoded expression shows its canonical form.
+ */
+public final class CronExpressionCodec {
+
+    /**
+     * The version written by {@link #encode(CronExpression)}. Decoding rejects other versions.
+     */
+    public static final int VERSION = 1;
+
+    private static final int WEEK_STARTS_SUNDAY = 1;
+    private static final int YEARS = 1 << 1;
+    private static final int SEARCH_HORIZON = 1 << 2;
+    private static final int GAP_POLICY_SHIFT = 3;
+    private static final int OVERLAP_POLICY_SHIFT = 5;
+
+    private static final int RULE_ANY = 1;
+    private static final int RULE_LAST = 2;
+    private static final int RULE_LAST_OFFSET = 3;
+    private static final int RULE_NEAREST_WEEKDAY = 4;
+    private static final int RULE_LAST_WEEKDAY = 5;
+    private static final int RULE_LAST_DAY_OF_WEEK = 6;
+    private static final int RULE_NTH_DAY_OF_WEEK = 7;
+
+    private CronExpressionCodec() {
+    }
+
+    public static byte[] encode(CronExpression expression) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(expression));
+        encode(expression, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Writes the encoding of {@code expression} at the position of {@code buffer}, which is advanced past it.
+     *
+     * @throws java.nio.BufferOverflowException if there are less than {@link #encodedLength(CronExpression)} bytes
+     *                                          remaining
+     */
+    public static void encode(CronExpression expression, ByteBuffer buffer) {
+        SimpleField yearField = expression.getYearField();
+        DayOfWeekField dayOfWeekField = expression.getDayOfWeekField();
+        boolean years = !yearField.matchesAll();
+        boolean searchHorizon = expression.getSearchHorizon() != CronExpression.DEFAULT_SEARCH_HORIZON;
+        int flags = (dayOfWeekField.weekStartsSunday() ? WEEK_STARTS_SUNDAY : 0) | (years ? YEARS : 0)
+                | (searchHorizon ? SEARCH_HORIZON : 0)
+                | expression.getGapPolicy().ordinal() << GAP_POLICY_SHIFT
+                | expression.getOverlapPolicy().ordinal() << OVERLAP_POLICY_SHIFT;
+        buffer.put((byte) VERSION);
+        buffer.put((byte) flags);
+        if (searchHorizon) {
+            buffer.putInt(expression.getSearchHorizon());
+        }
+        putValues(buffer, expression.getSecondField());
+        putValues(buffer, expression.getMinuteField());
+        putValues(buffer, expression.getHourField());
+        putValues(buffer, expression.getDayOfMonthField());
+        putValues(buffer, expression.getMonthField());
+        putValues(buffer, dayOfWeekField);
+        if (years) {
+            putYears(buffer, yearField);
+        }
+        putRules(buffer, expression.getDayOfMonthField());
+        putRules(buffer, dayOfWeekField);
+    }
+
+    /**
+     * @return the number of bytes written by {@link #encode(CronExpression, ByteBuffer)}
+     */
+    public static int encodedLength(CronExpression expression) {
+        int length = 2;
+        if (expression.getSearchHorizon() != CronExpression.DEFAULT_SEARCH_HORIZON) {
+            length += 4;
+        }
+        length += valuesLength(CronFieldType.SECOND) + valuesLength(CronFieldType.MINUTE) + valuesLength(CronFieldType.HOUR)
+                + valuesLength(CronFieldType.DAY_OF_MONTH) + valuesLength(CronFieldType.MONTH)
+                + valuesLength(CronFieldType.DAY_OF_WEEK);
+        SimpleField yearField = expression.getYearField();
+        if (!yearField.matchesAll()) {
+            length += 2 + yearsLength(yearField);
+        }
+        return length + rulesLength(expression.getDayOfMonthField()) + rulesLength(expression.getDayOfWeekField());
+    }
+
+    public static CronExpression decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CronExpression expression = decode(buffer);
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Invalid encoding, " + buffer.remaining() + " bytes after the expression");
+        }
+        return expression;
+    }
+
+    /**
+     * Reads an expression encoded at the position of {@code buffer}, which is advanced past it.
+     *
+     * @throws IllegalArgumentException if the version is not supported or the encoding is invalid
+     */
+    public static CronExpression decode(ByteBuffer buffer) {
+        try {
+            int version = buffer.get() & 0xFF;
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported encoding version " + version);
+            }
+            int flags = buffer.get() & 0xFF;
+            int searchHorizon = (flags & SEARCH_HORIZON) != 0 ? buffer.getInt() : CronExpression.DEFAULT_SEARCH_HORIZON;
+            if (searchHorizon < 1) {
+                throw new IllegalArgumentException("Invalid encoding, search horizon " + searchHorizon);
+            }
+            GapPolicy gapPolicy = valueOf(GapPolicy.values(), flags >>> GAP_POLICY_SHIFT & 3);
+            OverlapPolicy overlapPolicy = valueOf(OverlapPolicy.values(), flags >>> OVERLAP_POLICY_SHIFT & 3);
+            SimpleField secondField = new SimpleField(CronFieldType.SECOND, getValues(buffer, CronFieldType.SECOND));
+            SimpleField minuteField = new SimpleField(CronFieldType.MINUTE, getValues(buffer, CronFieldType.MINUTE));
+            SimpleField hourField = new SimpleField(CronFieldType.HOUR, getValues(buffer, CronFieldType.HOUR));
+            long[] daysOfMonth = getValues(buffer, CronFieldType.DAY_OF_MONTH);
+            SimpleField monthField = new SimpleField(CronFieldType.MONTH, getValues(buffer, CronFieldType.MONTH));
+            long[] daysOfWeek = getValues(buffer, CronFieldType.DAY_OF_WEEK);
+            long[] years = (flags & YEARS) != 0 ? getYears(buffer) : allYears();
+            SimpleField yearField = new SimpleField(CronFieldType.YEAR, years);
+            DayOfMonthField dayOfMonthField = new DayOfMonthField(daysOfMonth, getRules(buffer, CronFieldType.DAY_OF_MONTH, daysOfMonth));
+            boolean weekStartsSunday = (flags & WEEK_STARTS_SUNDAY) != 0;
+            CronFieldType dayOfWeekType = weekStartsSunday ? CronFieldType.DAY_OF_WEEK_US : CronFieldType.DAY_OF_WEEK;
+            DayOfWeekField dayOfWeekField = new DayOfWeekField(daysOfWeek, getRules(buffer, dayOfWeekType, daysOfWeek), weekStartsSunday);
+            return new CronExpression(secondField, minuteField, hourField, dayOfMonthField, monthField, dayOfWeekField,
+                    yearField, searchHorizon, gapPolicy, overlapPolicy);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Invalid encoding, truncated", e);
+        }
+    }
+
+    private static <T> T valueOf(T[] values, int ordinal) {
+        if (ordinal >= values.length) {
+            throw new IllegalArgumentException("Invalid encoding, no " + values[0].getClass().getSimpleName() + " " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    private static int valuesLength(CronFieldType fieldType) {
+        return (fieldType.getTo() - fieldType.getFrom()) / Byte.SIZE + 1;
+    }
+
+    private static void putValues(ByteBuffer buffer, BasicField field) {
+        CronFieldType fieldType = field.fieldType;
+        int length = valuesLength(fieldType);
+        long bits = 0;
+        for (int value = field.firstValue(); value >= 0; value = field.nextValue(value + 1)) {
+            bits |= 1L << (value - fieldType.getFrom());
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            buffer.put((byte) (bits >>> i * Byte.SIZE));
+        }
+    }
+
+    private static long[] getValues(ByteBuffer buffer, CronFieldType fieldType) {
+        long bits = 0;
+        for (int i = valuesLength(fieldType); i > 0; i--) {
+            bits = bits << Byte.SIZE | buffer.get() & 0xFF;
+        }
+        return new long[]{bits};
+    }
+
+    private static int yearsLength(SimpleField yearField) {
+        int first = yearField.firstValue();
+        return first < 0 ? 0 : (yearField.lastValue() - first) / Byte.SIZE + 1;
+    }
+
+    private static void putYears(ByteBuffer buffer, SimpleField yearField) {
+        int first = yearField.firstValue();
+        int length = yearsLength(yearField);
+        buffer.put((byte) (first < 0 ? 0 : first - CronFieldType.YEAR.getFrom()));
+        buffer.put((byte) length);
+        byte[] bytes = new byte[length];
+        for (int year = first; year >= 0; year = yearField.nextValue(year + 1)) {
+            bytes[(year - first) / Byte.SIZE] |= 1 << (year - first) % Byte.SIZE;
+        }
+        buffer.put(bytes);
+    }
+
+    private static long[] getYears(ByteBuffer buffer) {
+        int offset = buffer.get() & 0xFF;
+        int length = buffer.get() & 0xFF;
+        long[] bits = new long[(CronFieldType.YEAR.getTo() - CronFieldType.YEAR.getFrom()) / Long.SIZE + 1];
+        for (int i = 0; i < length; i++) {
+            int b = buffer.get() & 0xFF;
+            for (int bit = 0; bit < Byte.SIZE; bit++) {
+                if ((b & 1 << bit) != 0) {
+                    int index = offset + i * Byte.SIZE + bit;
+                    if (index >= bits.length * Long.SIZE) {
+                        throw new IllegalArgumentException("Invalid encoding, year out of range");
+                    }
+                    bits[index >>> 6] |= 1L << index;
+                }
+            }
+        }
+        return bits;
+    }
+
+    private static long[] allYears() {
+        int range = CronFieldType.YEAR.getTo() - CronFieldType.YEAR.getFrom() + 1;
+        long[] bits = new long[(range - 1) / Long.SIZE + 1];
+        for (int i = 0; i < range; i++) {
+            bits[i >>> 6] |= 1L << i;
+        }
+        return bits;
+    }
+
+    private static int rulesLength(BasicField field) {
+        int length = 1;
+        for (FieldPart part : field.parts) {
+            length += 1 + operands(opcode(part));
+        }
+        return length;
+    }
+
+    private static void putRules(ByteBuffer buffer, BasicField field) {
+        if (field.parts.size() > 0xFF) {
+            throw new IllegalArgumentException("Too many rules to encode for field [" + field.fieldType + "]: " + field.parts.size());
+        }
+        buffer.put((byte) field.parts.size());
+        for (FieldPart part : field.parts) {
+            int opcode = opcode(part);
+            buffer.put((byte) opcode);
+            if (operands(opcode) > 0) {
+                buffer.put((byte) part.getValue());
+            }
+            if (operands(opcode) > 1) {
+                buffer.put((byte) part.getNth());
+            }
+        }
+    }
+
+    /**
+     * Reads the rules of a day field. Rules which allow values, '?' and 'L' alone in the day of week field, are set in
+     * {@code values} instead.
+     */
+    private static List<FieldPart> getRules(ByteBuffer buffer, CronFieldType fieldType, long[] values) {
+        int count = buffer.get() & 0xFF;
+        List<FieldPart> parts = new ArrayList<FieldPart>(count);
+        for (int i = 0; i < count; i++) {
+            int opcode = buffer.get() & 0xFF;
+            if (!isAllowed(fieldType, opcode)) {
+                throw new IllegalArgumentException("Invalid encoding, unknown rule " + opcode + " for field [" + fieldType + "]");
+            }
+            int value = operands(opcode) > 0 ? buffer.get() & 0xFF : 0;
+            int nth = operands(opcode) > 1 ? buffer.get() & 0xFF : 0;
+            if (operands(opcode) > 0 && (value < fieldType.getFrom() || value > fieldType.getTo()) || nth > 5) {
+                throw new IllegalArgumentException("Invalid encoding, rule " + opcode + " out of range for field [" + fieldType + "]");
+            }
+            switch (opcode) {
+                case RULE_ANY:
+                    values[0] |= (1L << (fieldType.getTo() - fieldType.getFrom() + 1)) - 1;
+                    break;
+                case RULE_LAST:
+                    if (fieldType == CronFieldType.DAY_OF_MONTH) {
+                        parts.add(new FieldPart(FieldPart.LAST_DAY_OF_MONTH, 0, 0));
+                    } else {
+                        values[0] |= 1L << (fieldType.getEnd() - fieldType.getFrom());
+                    }
+                    break;
+                case RULE_LAST_OFFSET:
+                    parts.add(new FieldPart(FieldPart.LAST_DAY_OF_MONTH, value, 0));
+                    break;
+                case RULE_NEAREST_WEEKDAY:
+                    parts.add(new FieldPart(FieldPart.NEAREST_WEEKDAY, value, 0));
+                    break;
+                case RULE_LAST_WEEKDAY:
+                    parts.add(new FieldPart(FieldPart.LAST_WEEKDAY, 0, 0));
+                    break;
+                case RULE_LAST_DAY_OF_WEEK:
+                    parts.add(new FieldPart(FieldPart.LAST_DAY_OF_WEEK, value, 0));
+                    break;
+                case RULE_NTH_DAY_OF_WEEK:
+                    parts.add(new FieldPart(FieldPart.NTH_DAY_OF_WEEK, value, nth));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown rule: " + opcode);
+            }
+        }
+        return parts;
+    }
+
+    private static int opcode(FieldPart part) {
+        switch (part.getOpcode()) {
+            case FieldPart.LAST_DAY_OF_MONTH:
+                return part.getValue() == 0 ? RULE_LAST : RULE_LAST_OFFSET;
+            case FieldPart.NEAREST_WEEKDAY:
+                return RULE_NEAREST_WEEKDAY;
+            case FieldPart.LAST_WEEKDAY:
+                return RULE_LAST_WEEKDAY;
+            case FieldPart.LAST_DAY_OF_WEEK:
+                return RULE_LAST_DAY_OF_WEEK;
+            case FieldPart.NTH_DAY_OF_WEEK:
+                return RULE_NTH_DAY_OF_WEEK;
+            default:
+                throw new IllegalStateException("Unknown part: " + part);
+        }
+    }
+
+    private static boolean isAllowed(CronFieldType fieldType, int opcode) {
+        if (fieldType == CronFieldType.DAY_OF_MONTH) {
+            return opcode == RULE_ANY || opcode == RULE_LAST || opcode == RULE_LAST_OFFSET || opcode == RULE_NEAREST_WEEKDAY
+                    || opcode == RULE_LAST_WEEKDAY;
+        }
+        return opcode == RULE_ANY || opcode == RULE_LAST || opcode == RULE_LAST_DAY_OF_WEEK || opcode == RULE_NTH_DAY_OF_WEEK;
+    }
+
+    private static int operands(int opcode) {
+        switch (opcode) {
+            case RULE_LAST_OFFSET:
+            case RULE_NEAREST_WEEKDAY:
+            case RULE_LAST_DAY_OF_WEEK:
+                return 1;
+            case RULE_NTH_DAY_OF_WEEK:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package fc.cron;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Inverted index over a fixed set of expressions, answering which of them match a given second without testing each
+ * expression. For every value of the second, minute, hour, day of month, month and day of week fields there is a
+ * bitmap of the ids of the expressions allowing it, and the expressions matching a time are found by intersecting
+ * six bitmaps word by word.
+ * <p>
+ * Expressions with L, W or # rules in the day fields are in the bitmaps of every day, and expressions restricting the
+ * year are in no year bitmap; both kinds are kept in a residual list and checked one by one after the intersection.
+ * <p>
+ * The bitmaps match wall-clock time. Close to a daylight saving transition, where the {@link GapPolicy} and {@link
+ * OverlapPolicy} of each expression move, skip or repeat its times, every expression is checked with {@link
+ * CronExpression#tryNextTimeAfter(long, DateTimeZone)} instead, so that the index agrees with the search.
+ * <p>
+ * The id of an expression is its position in the list the index was built from. The index is immutable and may be
+ * shared between threads.
+ */
+public class CronIndex {
+    private final List<CronExpression> expressions;
+    private final BitSet[] seconds = bitmaps(CronFieldType.SECOND);
+    private final BitSet[] minutes = bitmaps(CronFieldType.MINUTE);
+    private final BitSet[] hours = bitmaps(CronFieldType.HOUR);
+    private final BitSet[] daysOfMonth = bitmaps(CronFieldType.DAY_OF_MONTH);
+    private final BitSet[] months = bitmaps(CronFieldType.MONTH);
+    private final BitSet[] daysOfWeek = bitmaps(CronFieldType.DAY_OF_WEEK);
+    private final int[] residual;
+
+    public CronIndex(List<CronExpression> expressions) {
+        this.expressions = new ArrayList<CronExpression>(expressions);
+        List<Integer> residualIds = new ArrayList<Integer>();
+        for (int id = 0; id < this.expressions.size(); id++) {
+            CronExpression expression = this.expressions.get(id);
+            index(seconds, expression.getSecondField(), id);
+            index(minutes, expression.getMinuteField(), id);
+            index(hours, expression.getHourField(), id);
+            index(months, expression.getMonthField(), id);
+            boolean dayRules = index(daysOfMonth, expression.getDayOfMonthField(), id);
+            dayRules |= index(daysOfWeek, expression.getDayOfWeekField(), id);
+            if (dayRules || !expression.getYearField().matchesAll()) {
+                residualIds.add(id);
+            }
+        }
+        residual = new int[residualIds.size()];
+        for (int i = 0; i < residual.length; i++) {
+            residual[i] = residualIds.get(i);
+        }
+    }
+
+    private static BitSet[] bitmaps(CronFieldType fieldType) {
+        BitSet[] bitmaps = new BitSet[fieldType.getTo() + 1];
+        for (int value = fieldType.getFrom(); value <= fieldType.getTo(); value++) {
+            bitmaps[value] = new BitSet();
+        }
+        return bitmaps;
+    }
+
+    /**
+     * @return whether the field has rules which must be checked for each date, in which case the expression is added
+     * to the bitmap of every value
+     */
+    private static boolean index(BitSet[] bitmaps, BasicField field, int id) {
+        boolean all = field.matchesAll();
+        boolean rules = !all && !field.parts.isEmpty();
+        for (int value = 0; value < bitmaps.length; value++) {
+            if (bitmaps[value] != null && (all || rules || field.matches(value))) {
+                bitmaps[value].set(id);
+            }
+        }
+        return rules;
+    }
+
+    public int size() {
+        return expressions.size();
+    }
+
+    public CronExpression get(int id) {
+        return expressions.get(id);
+    }
+
+    /**
+     * @return the ids of the expressions matching the second of {@code time}, in its zone
+     */
+    public BitSet matching(DateTime time) {
+        BitSet result = new BitSet(expressions.size());
+        matching(time.getMillis(), time.getZone(), result);
+        return result;
+    }
+
+    /**
+     * Sets {@code result} to the ids of the expressions matching the second of {@code time} in {@code zone}, reusing
+     * its storage.
+     */
+    public void matching(long time, DateTimeZone zone, BitSet result) {
+        ZoneOffsets offsets = ZoneOffsets.of(zone);
+        long second = Math.floorDiv(time, CalendarMath.MILLIS_PER_SECOND) * CalendarMath.MILLIS_PER_SECOND;
+        if (isNearTransition(offsets, second)) {
+            result.clear();
+            for (int id = 0; id < expressions.size(); id++) {
+                long previous = second - CalendarMath.MILLIS_PER_SECOND;
+                if (expressions.get(id).tryNextTimeAfter(previous, offsets, second + CalendarMath.MILLIS_PER_SECOND) == second) {
+                    result.set(id);
+                }
+            }
+            return;
+        }
+        long epochSecond = Math.floorDiv(offsets.localOf(second), CalendarMath.MILLIS_PER_SECOND);
+        long epochDay = Math.floorDiv(epochSecond, CalendarMath.SECONDS_PER_DAY);
+        int secondOfDay = (int) (epochSecond - epochDay * CalendarMath.SECONDS_PER_DAY);
+        int date = CalendarMath.date(epochDay);
+        int year = CalendarMath.year(date);
+        int month = CalendarMath.month(date);
+        int dayOfMonth = CalendarMath.dayOfMonth(date);
+        int dayOfWeek = CalendarMath.dayOfWeek(epochDay);
+
+        result.clear();
+        result.or(seconds[secondOfDay % 60]);
+        result.and(minutes[secondOfDay / 60 % 60]);
+        result.and(hours[secondOfDay / 3600]);
+        result.and(months[month]);
+        result.and(daysOfMonth[dayOfMonth]);
+        result.and(daysOfWeek[dayOfWeek]);
+
+        for (int id : residual) {
+            if (result.get(id)) {
+                CronExpression expression = expressions.get(id);
+                if (!expression.getYearField().matches(year)
+                        || !expression.getDayOfMonthField().matches(year, month, dayOfMonth, dayOfWeek)
+                        || !expression.getDayOfWeekField().matches(year, month, dayOfMonth, dayOfWeek)) {
+                    result.clear(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether {@code time} is within the length of a gap or an overlap from its transition, where times are
+     * moved or repeated by policy
+     */
+    private static boolean isNearTransition(ZoneOffsets offsets, long time) {
+        int i = offsets.transitionAt(time);
+        for (int j = Math.max(i, 0); j <= i + 1 && j < offsets.size(); j++) {
+            long delta = Math.abs(offsets.offsetAfter(j) - offsets.offsetBefore(j));
+            if (time >= offsets.instant(j) - delta && time < offsets.instant(j) + delta) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
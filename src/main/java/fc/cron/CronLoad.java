@@ -0,0 +1,114 @@
+package fc.cron;
+
+import org.joda.time.DateTimeZone;
+
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Forecast of the firing load of many expressions: how many times they fire together in each bucket of a window, e.g.
+ * in each minute of the next day, to plan capacity and find the peaks. Equal expressions are counted once with their
+ * number of copies, and the times of an expression are added from its field masks rather than searched one by one, so
+ * that a whole bucket of times costs a multiplication. Only close to daylight saving transitions, where the gap and
+ * overlap policies decide, are the times searched.
+ */
+public final class CronLoad {
+
+    private CronLoad() {
+    }
+
+    /**
+     * @param from         instant in milliseconds since the epoch at which the first bucket starts
+     * @param to           instant in milliseconds since the epoch at which the window ends, exclusive
+     * @param bucketMillis length of the buckets, the last of which may reach beyond {@code to}
+     * @param zone         the zone to evaluate the expressions in
+     * @return the number of times of all expressions in each bucket
+     */
+    public static long[] histogram(Iterable<CronExpression> expressions, long from, long to, long bucketMillis, DateTimeZone zone) {
+        return histogram(expressions, from, to, bucketMillis, ZoneOffsets.of(zone));
+    }
+
+    /**
+     * Same as {@link #histogram(Iterable, long, long, long, DateTimeZone)} in a {@code java.time} zone.
+     */
+    public static long[] histogram(Iterable<CronExpression> expressions, long from, long to, long bucketMillis, ZoneId zone) {
+        return histogram(expressions, from, to, bucketMillis, ZoneOffsets.of(zone));
+    }
+
+    /**
+     * @return the index of the first bucket with the highest count, or -1 if there are no buckets
+     */
+    public static int peak(long[] histogram) {
+        int peak = -1;
+        for (int i = 0; i < histogram.length; i++) {
+            if (peak < 0 || histogram[i] > histogram[peak]) {
+                peak = i;
+            }
+        }
+        return peak;
+    }
+
+    private static long[] histogram(Iterable<CronExpression> expressions, long from, long to, long bucketMillis, ZoneOffsets offsets) {
+        if (to <= from || bucketMillis <= 0) {
+            throw new IllegalArgumentException("Invalid window from " + from + " to " + to + " in buckets of " + bucketMillis);
+        }
+        long buckets = (to - from - 1) / bucketMillis + 1;
+        if (buckets > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many buckets: " + buckets);
+        }
+        Map<CronExpression, long[]> copies = new HashMap<CronExpression, long[]>();
+        for (CronExpression expression : expressions) {
+            long[] count = copies.get(expression);
+            if (count == null) {
+                copies.put(expression, new long[]{1});
+            } else {
+                count[0]++;
+            }
+        }
+
+        long[] counts = new long[(int) buckets];
+        long start = from;
+        // around a transition the times of a gap or an overlap are moved or repeated by policy, elsewhere every
+        // wall-clock time is a single instant at the offset of its segment
+        for (int i = Math.max(offsets.transitionAt(from), 0); i < offsets.size(); i++) {
+            long delta = Math.abs(offsets.offsetAfter(i) - offsets.offsetBefore(i));
+            long guardStart = offsets.instant(i) - delta;
+            long guardEnd = offsets.instant(i) + delta;
+            if (guardStart >= to) {
+                break;
+            } else if (guardEnd <= start) {
+                continue;
+            }
+            if (guardStart > start) {
+                addLocalTimes(copies, start, guardStart, from, bucketMillis, offsets, counts);
+                start = guardStart;
+            }
+            addSearchedTimes(copies, start, Math.min(guardEnd, to), from, bucketMillis, offsets, counts);
+            start = Math.min(guardEnd, to);
+        }
+        if (start < to) {
+            addLocalTimes(copies, start, to, from, bucketMillis, offsets, counts);
+        }
+        return counts;
+    }
+
+    private static void addLocalTimes(Map<CronExpression, long[]> copies, long start, long end, long from, long bucketMillis,
+                                      ZoneOffsets offsets, long[] counts) {
+        int offset = offsets.offsetAt(start);
+        for (Map.Entry<CronExpression, long[]> entry : copies.entrySet()) {
+            entry.getKey().addLocalTimes(start + offset, end + offset, offset, from, bucketMillis, entry.getValue()[0], counts);
+        }
+    }
+
+    private static void addSearchedTimes(Map<CronExpression, long[]> copies, long start, long end, long from, long bucketMillis,
+                                         ZoneOffsets offsets, long[] counts) {
+        for (Map.Entry<CronExpression, long[]> entry : copies.entrySet()) {
+            CronExpression expression = entry.getKey();
+            for (long time = expression.tryNextTimeAfter(start - 1, offsets, end); time != CronExpression.NO_TIME && time < end;
+                 time = expression.tryNextTimeAfter(time, offsets, end)) {
+                counts[(int) ((time - from) / bucketMillis)] += entry.getValue()[0];
+            }
+        }
+    }
+}
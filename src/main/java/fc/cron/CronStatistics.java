@@ -0,0 +1,57 @@
+package fc.cron;
+
+/**
+ * How often an expression fires, computed from its fields without listing its times, e.g. to reject schedules which
+ * fire too often before accepting them. Gaps are measured in wall-clock time: where daylight saving time changes the
+ * offset, the elapsed time differs by the change. Averages are over the years allowed by the year field. Instances
+ * are immutable.
+ *
+ * @see CronExpression#getStatistics()
+ */
+public final class CronStatistics {
+
+    private final long minimumGapSeconds;
+    private final long maximumGapSeconds;
+    private final double averageTimesPerDay;
+    private final double averageTimesPerMonth;
+
+    CronStatistics(long minimumGapSeconds, long maximumGapSeconds, double averageTimesPerDay, double averageTimesPerMonth) {
+        this.minimumGapSeconds = minimumGapSeconds;
+        this.maximumGapSeconds = maximumGapSeconds;
+        this.averageTimesPerDay = averageTimesPerDay;
+        this.averageTimesPerMonth = averageTimesPerMonth;
+    }
+
+    /**
+     * @return the shortest time between consecutive times in seconds, or -1 if there are fewer than two times
+     */
+    public long getMinimumGapSeconds() {
+        return minimumGapSeconds;
+    }
+
+    /**
+     * @return the longest time between consecutive times in seconds, or -1 if there are fewer than two times
+     */
+    public long getMaximumGapSeconds() {
+        return maximumGapSeconds;
+    }
+
+    public double getAverageTimesPerDay() {
+        return averageTimesPerDay;
+    }
+
+    public double getAverageTimesPerMonth() {
+        return averageTimesPerMonth;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CronStatistics{");
+        sb.append("minimumGapSeconds=").append(minimumGapSeconds);
+        sb.append(", maximumGapSeconds=").append(maximumGapSeconds);
+        sb.append(", averageTimesPerDay=").append(averageTimesPerDay);
+        sb.append(", averageTimesPerMonth=").append(averageTimesPerMonth);
+        sb.append('}');
+        return sb.toString();
+    }
+}
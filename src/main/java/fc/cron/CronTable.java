@@ -0,0 +1,467 @@
+package fc.cron;
+
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+
+/**
+ * A file of compiled expressions in fixed-size records, memory mapped when opened, so that millions of schedules can
+ * be held off the heap and loaded without parsing. The next time of a record is searched directly in the mapped
+ * buffer, without building a {@link CronExpression}.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes: the magic number {@code CRNT}, the version, the record
+ * size and the number of records. Each record of {@link #RECORD_SIZE} bytes holds the allowed values of every field as
+ * bits, with the day rules compiled to bits as well (the offsets from the last day of the month, the days of the
+ * nearest weekday rules, the last and nth days of week), together with the search horizon and the daylight saving
+ * policies. All values are big-endian. Tables are immutable and safe to use from any thread.
+ */
+public final class CronTable {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 88;
+
+    private static final int MAGIC = 'C' << 24 | 'R' << 16 | 'N' << 8 | 'T';
+    private static final int RECORDS_PER_CHUNK_SHIFT = 24;
+    private static final int RECORDS_PER_CHUNK = 1 << RECORDS_PER_CHUNK_SHIFT;
+
+    private static final int SECONDS = 0;
+    private static final int MINUTES = 8;
+    private static final int YEARS = 16;
+    private static final int NTH_DAYS_OF_WEEK = 48;
+    private static final int HOURS = 56;
+    private static final int DAYS_OF_MONTH = 60;
+    private static final int LAST_OFFSETS = 64;
+    /**
+     * Days of the {@code W} rules, with bit 0 for {@code LW}.
+     */
+    private static final int NEAREST_WEEKDAYS = 68;
+    private static final int SEARCH_HORIZON = 72;
+    private static final int MONTHS = 76;
+    private static final int DAYS_OF_WEEK = 78;
+    private static final int LAST_DAYS_OF_WEEK = 79;
+    private static final int GAP_POLICY = 80;
+    private static final int OVERLAP_POLICY = 81;
+
+    private static final int ALL_HOURS = (1 << 24) - 1;
+    private static final int YEAR_WORDS = 4;
+
+    private final long size;
+    private final ByteBuffer[] chunks;
+
+    private CronTable(long size, ByteBuffer[] chunks) {
+        this.size = size;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Writes {@code expressions} to {@code file}, replacing it, in the order given.
+     */
+    public static void write(Path file, Iterable<CronExpression> expressions) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            buffer.position(HEADER_SIZE);
+            long count = 0;
+            for (CronExpression expression : expressions) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    flush(channel, buffer);
+                }
+                compile(expression, buffer);
+                count++;
+            }
+            flush(channel, buffer);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort((short) VERSION).putShort((short) RECORD_SIZE).putLong(count).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Maps the table in {@code file}. The file is not read beyond its header, pages are loaded as records are used.
+     *
+     * @throws IllegalArgumentException if the file is not a table of a supported version
+     */
+    public static CronTable open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a cron table: " + file);
+            }
+            int version = header.getShort();
+            int recordSize = header.getShort();
+            long size = header.getLong();
+            if (version != VERSION || recordSize != RECORD_SIZE) {
+                throw new IllegalArgumentException("Unsupported cron table version " + version + ": " + file);
+            } else if (size < 0 || channel.size() < HEADER_SIZE + size * RECORD_SIZE) {
+                throw new IllegalArgumentException("Truncated cron table: " + file);
+            }
+
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((size + RECORDS_PER_CHUNK - 1) >>> RECORDS_PER_CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                long first = (long) i << RECORDS_PER_CHUNK_SHIFT;
+                long records = Math.min(RECORDS_PER_CHUNK, size - first);
+                // the mapping stays valid after the channel is closed
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, records * RECORD_SIZE);
+            }
+            return new CronTable(size, chunks);
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Same as {@link CronExpression#tryNextTimeAfter(long, DateTimeZone)} for the expression of record {@code index}.
+     */
+    public long tryNextTimeAfter(long index, long afterTime, DateTimeZone zone) {
+        return tryNextTimeAfter(index, afterTime, ZoneOffsets.of(zone));
+    }
+
+    /**
+     * Same as {@link #tryNextTimeAfter(long, long, DateTimeZone)} for a {@code java.time} zone.
+     */
+    public long tryNextTimeAfter(long index, long afterTime, ZoneId zone) {
+        return tryNextTimeAfter(index, afterTime, ZoneOffsets.of(zone));
+    }
+
+    private long tryNextTimeAfter(long index, long afterTime, ZoneOffsets offsets) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No record " + index + " in a table of " + size);
+        }
+        Record record = new Record(chunks[(int) (index >>> RECORDS_PER_CHUNK_SHIFT)],
+                (int) (index & (RECORDS_PER_CHUNK - 1)) * RECORD_SIZE);
+        long afterLocal = offsets.localOf(afterTime);
+        long barrierLocal = CalendarMath.plusYears(afterLocal, record.buffer.getInt(record.offset + SEARCH_HORIZON));
+        long nextTime = record.nextTime(afterTime, afterLocal, barrierLocal, offsets, record.gapPolicy(), record.overlapPolicy());
+        return nextTime == LocalTimeSearch.BARRIER_REACHED ? CronExpression.NO_TIME : nextTime;
+    }
+
+    private static void compile(CronExpression expression, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putLong(start + SECONDS, bits(expression.getSecondField()));
+        buffer.putLong(start + MINUTES, bits(expression.getMinuteField()));
+        SimpleField yearField = expression.getYearField();
+        long[] years = new long[YEAR_WORDS];
+        for (int year = yearField.firstValue(); year >= 0; year = yearField.nextValue(year + 1)) {
+            int i = year - CronFieldType.YEAR.getFrom();
+            years[i >>> 6] |= 1L << i;
+        }
+        for (int w = 0; w < YEAR_WORDS; w++) {
+            buffer.putLong(start + YEARS + w * 8, years[w]);
+        }
+        buffer.putInt(start + HOURS, (int) bits(expression.getHourField()));
+        buffer.putShort(start + MONTHS, (short) bits(expression.getMonthField()));
+        buffer.putInt(start + SEARCH_HORIZON, expression.getSearchHorizon());
+        buffer.put(start + GAP_POLICY, (byte) expression.getGapPolicy().ordinal());
+        buffer.put(start + OVERLAP_POLICY, (byte) expression.getOverlapPolicy().ordinal());
+        buffer.putShort(start + OVERLAP_POLICY + 1, (short) 0);
+        buffer.putInt(start + RECORD_SIZE - 4, 0);
+
+        DayOfMonthField dayOfMonthField = expression.getDayOfMonthField();
+        int daysOfMonth = (int) bits(dayOfMonthField);
+        int lastOffsets = 0;
+        int nearestWeekdays = 0;
+        for (FieldPart part : dayOfMonthField.parts) {
+            switch (part.getOpcode()) {
+                case FieldPart.LAST_DAY_OF_MONTH:
+                    lastOffsets |= 1 << part.getValue();
+                    break;
+                case FieldPart.NEAREST_WEEKDAY:
+                    nearestWeekdays |= 1 << part.getValue();
+                    break;
+                case FieldPart.LAST_WEEKDAY:
+                    nearestWeekdays |= 1;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown rule: " + part);
+            }
+        }
+        buffer.putInt(start + DAYS_OF_MONTH, daysOfMonth);
+        buffer.putInt(start + LAST_OFFSETS, lastOffsets);
+        buffer.putInt(start + NEAREST_WEEKDAYS, nearestWeekdays);
+
+        DayOfWeekField dayOfWeekField = expression.getDayOfWeekField();
+        int daysOfWeek = (int) bits(dayOfWeekField);
+        int lastDaysOfWeek = 0;
+        long nthDaysOfWeek = 0;
+        for (FieldPart part : dayOfWeekField.parts) {
+            switch (part.getOpcode()) {
+                case FieldPart.LAST_DAY_OF_WEEK:
+                    lastDaysOfWeek |= 1 << part.getValue();
+                    break;
+                case FieldPart.NTH_DAY_OF_WEEK:
+                    if (part.getNth() >= 1) {
+                        nthDaysOfWeek |= 1L << ((part.getNth() - 1) * 7 + part.getValue() - 1);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown rule: " + part);
+            }
+        }
+        buffer.put(start + DAYS_OF_WEEK, (byte) daysOfWeek);
+        buffer.put(start + LAST_DAYS_OF_WEEK, (byte) lastDaysOfWeek);
+        buffer.putLong(start + NTH_DAYS_OF_WEEK, nthDaysOfWeek);
+        buffer.position(start + RECORD_SIZE);
+    }
+
+    /**
+     * @return the allowed values of a field below the year, with the value as the bit index
+     */
+    private static long bits(BasicField field) {
+        long bits = 0;
+        for (int value = field.firstValue(); value >= 0; value = field.nextValue(value + 1)) {
+            bits |= 1L << value;
+        }
+        return bits;
+    }
+
+    /**
+     * The search over a single record, reading the fields from the mapped buffer as they are needed.
+     */
+    private static final class Record extends LocalTimeSearch {
+        private final ByteBuffer buffer;
+        private final int offset;
+
+        Record(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        GapPolicy gapPolicy() {
+            return GapPolicy.values()[buffer.get(offset + GAP_POLICY)];
+        }
+
+        OverlapPolicy overlapPolicy() {
+            OverlapPolicy policy = OverlapPolicy.values()[buffer.get(offset + OVERLAP_POLICY)];
+            if (policy == OverlapPolicy.CRON) {
+                return buffer.getInt(offset + HOURS) == ALL_HOURS ? OverlapPolicy.BOTH : OverlapPolicy.EARLIER;
+            }
+            return policy;
+        }
+
+        /**
+         * Same search as the one of {@link CronExpression}, with the matching days of each month found as a mask.
+         */
+        @Override
+        long nextLocalTime(long afterLocal, long barrierLocal) {
+            long seconds = buffer.getLong(offset + SECONDS);
+            long minutes = buffer.getLong(offset + MINUTES);
+            int hours = buffer.getInt(offset + HOURS);
+            int months = buffer.getShort(offset + MONTHS);
+            if (seconds == 0 || minutes == 0 || hours == 0) {
+                return BARRIER_REACHED;
+            }
+            long epochSecond = Math.floorDiv(afterLocal, CalendarMath.MILLIS_PER_SECOND) + 1;
+            long epochDay = Math.floorDiv(epochSecond, CalendarMath.SECONDS_PER_DAY);
+            int secondOfDay = (int) (epochSecond - epochDay * CalendarMath.SECONDS_PER_DAY);
+            int date = CalendarMath.date(epochDay);
+            int year = CalendarMath.year(date);
+            int month = CalendarMath.month(date);
+            int day = CalendarMath.dayOfMonth(date);
+            int hour = secondOfDay / 3600;
+            int minute = secondOfDay / 60 % 60;
+            int second = secondOfDay % 60;
+
+            while (true) {
+                int nextYear = nextYear(year);
+                if (nextYear < 0) {
+                    return CronExpression.NO_TIME;
+                } else if (nextYear != year) {
+                    year = nextYear;
+                    month = 1;
+                    day = 1;
+                    hour = -1;
+                }
+                int nextMonth = next(months, month);
+                if (nextMonth < 0) {
+                    year++;
+                    month = 1;
+                    day = 1;
+                    hour = -1;
+                } else if (nextMonth != month) {
+                    month = nextMonth;
+                    day = 1;
+                    hour = -1;
+                }
+                int nextDay = nextMonth < 0 ? -1 : next(daysOfMonth(year, month), day);
+                if (nextDay < 0) {
+                    if (nextMonth >= 0 && ++month > 12) {
+                        year++;
+                        month = 1;
+                    }
+                    day = 1;
+                    hour = -1;
+                    // a month without matching days moves the date as well
+                    if (CalendarMath.epochDay(year, month, 1) * CalendarMath.MILLIS_PER_DAY > barrierLocal) {
+                        return BARRIER_REACHED;
+                    }
+                    continue;
+                } else if (nextDay != day) {
+                    day = nextDay;
+                    hour = -1;
+                }
+                if (hour < 0) {
+                    if (CalendarMath.epochDay(year, month, day) * CalendarMath.MILLIS_PER_DAY > barrierLocal) {
+                        return BARRIER_REACHED;
+                    }
+                    hour = Long.numberOfTrailingZeros(hours);
+                    minute = Long.numberOfTrailingZeros(minutes);
+                    second = Long.numberOfTrailingZeros(seconds);
+                }
+
+                int nextSecond = next(seconds, second);
+                if (nextSecond < 0) {
+                    minute++;
+                    second = Long.numberOfTrailingZeros(seconds);
+                } else {
+                    second = nextSecond;
+                }
+                int nextMinute = next(minutes, minute);
+                if (nextMinute != minute) {
+                    second = Long.numberOfTrailingZeros(seconds);
+                    if (nextMinute < 0) {
+                        hour++;
+                        minute = Long.numberOfTrailingZeros(minutes);
+                    } else {
+                        minute = nextMinute;
+                    }
+                }
+                int nextHour = next(hours, hour);
+                if (nextHour != hour) {
+                    minute = Long.numberOfTrailingZeros(minutes);
+                    second = Long.numberOfTrailingZeros(seconds);
+                    if (nextHour < 0) {
+                        day++;
+                        hour = -1;
+                        if (day > CalendarMath.lengthOfMonth(year, month)) {
+                            day = 1;
+                            if (++month > 12) {
+                                month = 1;
+                                year++;
+                            }
+                        }
+                        continue;
+                    }
+                    hour = nextHour;
+                }
+                return CalendarMath.localMillis(CalendarMath.date(year, month, day), hour, minute, second);
+            }
+        }
+
+        /**
+         * @return the first allowed year which is equal to or greater than {@code year}, or -1 if there is none
+         */
+        private int nextYear(int year) {
+            int i = Math.max(year - CronFieldType.YEAR.getFrom(), 0);
+            for (int w = i >>> 6; w < YEAR_WORDS; w++) {
+                long word = buffer.getLong(offset + YEARS + w * 8) & (w == i >>> 6 ? -1L << i : -1L);
+                if (word != 0) {
+                    return CronFieldType.YEAR.getFrom() + w * Long.SIZE + Long.numberOfTrailingZeros(word);
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the days of {@code month} matching both day fields, with the day as the bit index
+         */
+        private int daysOfMonth(int year, int month) {
+            int length = CalendarMath.lengthOfMonth(year, month);
+            int monthDays = (int) ((2L << length) - 2);
+            // day of week of the day before the 1st, so that day d falls on (firstDayOfWeek + d - 1) % 7 + 1
+            int weekday = CalendarMath.dayOfWeek(CalendarMath.epochDay(year, month, 1)) - 1;
+
+            int byMonth = buffer.getInt(offset + DAYS_OF_MONTH) & monthDays;
+            int lastOffsets = buffer.getInt(offset + LAST_OFFSETS);
+            for (int bits = lastOffsets; bits != 0; bits &= bits - 1) {
+                int day = length - Integer.numberOfTrailingZeros(bits);
+                if (day >= 1) {
+                    byMonth |= 1 << day;
+                }
+            }
+            int nearestWeekdays = buffer.getInt(offset + NEAREST_WEEKDAYS);
+            if ((nearestWeekdays & 1) != 0) {
+                int lastWeekday = (weekday + length - 1) % 7 + 1;
+                byMonth |= 1 << (length - Math.max(0, lastWeekday - 5));
+            }
+            if ((nearestWeekdays & ~1) != 0) {
+                byMonth |= nearestWeekdays(nearestWeekdays, year, month, length, weekday);
+            }
+
+            int daysOfWeek = buffer.get(offset + DAYS_OF_WEEK);
+            int lastDaysOfWeek = buffer.get(offset + LAST_DAYS_OF_WEEK);
+            long nthDaysOfWeek = buffer.getLong(offset + NTH_DAYS_OF_WEEK);
+            int byWeek = 0;
+            for (int dayOfWeek = 1; dayOfWeek <= 7; dayOfWeek++) {
+                int first = (dayOfWeek - weekday + 6) % 7 + 1;
+                if ((daysOfWeek & 1 << dayOfWeek) != 0) {
+                    for (int day = first; day <= length; day += 7) {
+                        byWeek |= 1 << day;
+                    }
+                }
+                if ((lastDaysOfWeek & 1 << dayOfWeek) != 0) {
+                    byWeek |= 1 << (first + (length - first) / 7 * 7);
+                }
+                for (int nth = 1; nth <= 5; nth++) {
+                    int day = first + (nth - 1) * 7;
+                    if ((nthDaysOfWeek & 1L << ((nth - 1) * 7 + dayOfWeek - 1)) != 0 && day <= length) {
+                        byWeek |= 1 << day;
+                    }
+                }
+            }
+            return byMonth & byWeek;
+        }
+
+        /**
+         * Days matching the {@code W} rules: the day itself if it is a weekday, otherwise the Friday before or the
+         * Monday after it, which may be in another month.
+         */
+        private static int nearestWeekdays(int nearestWeekdays, int year, int month, int length, int weekday) {
+            int previousLength = month > 1 ? CalendarMath.lengthOfMonth(year, month - 1) : 31;
+            int days = 0;
+            for (int day = 1; day <= length; day++) {
+                int dayOfWeek = (weekday + day - 1) % 7 + 1;
+                if (dayOfWeek > 5) {
+                    continue;
+                }
+                int tomorrow = day < length ? day + 1 : 1;
+                int yesterday = day > 1 ? day - 1 : previousLength;
+                if ((nearestWeekdays & 1 << day) != 0 || dayOfWeek == 5 && (nearestWeekdays & 1 << tomorrow) != 0
+                        || dayOfWeek == 1 && (nearestWeekdays & 1 << yesterday) != 0) {
+                    days |= 1 << day;
+                }
+            }
+            return days;
+        }
+
+        private static int next(long bits, int value) {
+            if (value >= Long.SIZE) {
+                return -1;
+            }
+            long next = bits & (-1L << Math.max(value, 0));
+            return next == 0 ? -1 : Long.numberOfTrailingZeros(next);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.joda.time.LocalDate;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 class DayOfMonthField extends BasicField {
@@ -15,114 +16,97 @@ class DayOfMonthField extends BasicField {
         super(CronFieldType.DAY_OF_MONTH, fieldExpr);
     }
 
+    DayOfMonthField(CharSequence expr, int start, int end) {
+        this(expr, start, end, null);
+    }
+
+    DayOfMonthField(CharSequence expr, int start, int end, String hashKey) {
+        super(CronFieldType.DAY_OF_MONTH, expr, start, end, hashKey);
+    }
+
+    DayOfMonthField(long[] bits, List<FieldPart> parts) {
+        super(CronFieldType.DAY_OF_MONTH, bits, parts);
+    }
+
     boolean matches(LocalDate date) {
-        for (FieldPart part : parts) {
-            if (matches(part, date)) {
+        return new DaysOfYear(date.getYear(), DaysOfYear.ANY_MONTH, this, DaysOfYear.ANY_DAY_OF_WEEK).matches(date.getDayOfYear());
+    }
+
+    boolean matches(int year, int month, int dayOfMonth, int dayOfWeek) {
+        for (int i = 0; i < parts.size(); i++) {
+            if (matches(parts.get(i), year, month, dayOfMonth, dayOfWeek)) {
                 return true;
             }
         }
 
-        return matches(date.getDayOfMonth());
+        return matches(dayOfMonth);
     }
 
-    private boolean matches(FieldPart part, LocalDate date) {
-        switch (part.getModifier()) {
-            case "L":
-                return date.getDayOfMonth() == (date.dayOfMonth().getMaximumValue() - (part.getFrom() == null ? 0 : part.getFrom()));
-            case "W":
-                if (date.getDayOfWeek() <= DateTimeConstants.FRIDAY) {
-                    if (date.getDayOfMonth() == part.getFrom()) {
+    private boolean matches(FieldPart part, int year, int month, int dayOfMonth, int dayOfWeek) {
+        switch (part.getOpcode()) {
+            case FieldPart.LAST_DAY_OF_MONTH:
+                return dayOfMonth == CalendarMath.lengthOfMonth(year, month) - part.getValue();
+            case FieldPart.NEAREST_WEEKDAY:
+                if (dayOfWeek <= DateTimeConstants.FRIDAY) {
+                    if (dayOfMonth == part.getValue()) {
                         return true;
-                    } else if (date.getDayOfWeek() == DateTimeConstants.FRIDAY) {
-                        return date.plusDays(1).getDayOfMonth() == part.getFrom();
-                    } else if (date.getDayOfWeek() == DateTimeConstants.MONDAY) {
-                        return date.minusDays(1).getDayOfMonth() == part.getFrom();
+                    } else if (dayOfWeek == DateTimeConstants.FRIDAY) {
+                        int tomorrow = dayOfMonth < CalendarMath.lengthOfMonth(year, month) ? dayOfMonth + 1 : 1;
+                        return tomorrow == part.getValue();
+                    } else if (dayOfWeek == DateTimeConstants.MONDAY) {
+                        int yesterday = dayOfMonth > 1 ? dayOfMonth - 1
+                                : month > 1 ? CalendarMath.lengthOfMonth(year, month - 1) : 31;
+                        return yesterday == part.getValue();
                     }
                 }
-                break;
-            case "LW":
-                LocalDate last = date.dayOfMonth().withMaximumValue();
-                last = last.minusDays(Math.max(0, last.getDayOfWeek() - DateTimeConstants.FRIDAY));
-                return last.getDayOfMonth() == date.getDayOfMonth();
-            case "?":
-                return true;
+                return false;
+            case FieldPart.LAST_WEEKDAY:
+                int last = CalendarMath.lengthOfMonth(year, month);
+                int lastDayOfWeek = (dayOfWeek - 1 + last - dayOfMonth) % DateTimeConstants.DAYS_PER_WEEK + 1;
+                return dayOfMonth == last - Math.max(0, lastDayOfWeek - DateTimeConstants.FRIDAY);
             default:
-                throw new IllegalStateException("Unknown modifier: " + part.getModifier());
+                throw new IllegalStateException("Unknown rule: " + part);
         }
-        return false;
     }
 
     public LocalDate nextDate(LocalDate date) {
-        LocalDate result = null;
-        for (FieldPart part : parts) {
-            LocalDate partDate = date;
-            switch (part.getModifier()) {
-                case "?":
-                    partDate = date.plusDays(1);
-                    break;
-                case "L":
-                    partDate = nextLastDayOfMonth(date, part.getFrom());
-                    break;
-                case "W":
-                    partDate = nextWeekday(date, part.getFrom());
-                    break;
-                case "LW":
-                    partDate = nextLastWeekday(date);
-                    break;
-                default:
-                    throw new IllegalStateException("Unknown modifier: " + part.getModifier());
-            }
-
-            result = result != null && result.isBefore(partDate) ? result : partDate;
-        }
-
-        if (hasValues()) {
-            LocalDate partDate = date.plusDays(1);
-            int day = nextValue(partDate.getDayOfMonth());
-            if (day > 0 && day <= partDate.dayOfMonth().getMaximumValue()) {
-                partDate = partDate.withDayOfMonth(day);
-            } else {
-                partDate = partDate.plusMonths(1).withDayOfMonth(nextValue(fieldType.getFrom()));
-            }
-            result = result != null && result.isBefore(partDate) ? result : partDate;
-        }
-
-        return result;
+        int next = DaysOfYear.nextDate(CalendarMath.date(date.getYear(), date.getMonthOfYear(), date.getDayOfMonth()), this,
+                DaysOfYear.ANY_DAY_OF_WEEK);
+        return next < 0 ? null : new LocalDate(CalendarMath.year(next), CalendarMath.month(next), CalendarMath.dayOfMonth(next));
     }
 
-    private LocalDate nextLastWeekday(LocalDate date) {
-        LocalDate last = date.plusDays(1).dayOfMonth().withMaximumValue();
-        return last.minusDays(Math.max(0, last.getDayOfWeek() - DateTimeConstants.FRIDAY));
-    }
-
-    private LocalDate nextLastDayOfMonth(LocalDate date, Integer offset) {
-        return date.plusDays(1).dayOfMonth().withMaximumValue().minusDays(offset == null ? 0 : offset);
+    @Override
+    protected String canonicalPart(FieldPart part) {
+        switch (part.getOpcode()) {
+            case FieldPart.LAST_DAY_OF_MONTH:
+                return part.getValue() == 0 ? "L" : "L-" + part.getValue();
+            case FieldPart.NEAREST_WEEKDAY:
+                return part.getValue() + "W";
+            case FieldPart.LAST_WEEKDAY:
+                return "LW";
+            default:
+                return super.canonicalPart(part);
+        }
     }
 
-    private LocalDate nextWeekday(LocalDate date, Integer dayOfMonth) {
-        LocalDate result = date;
-        while (true) {
-            result = result.withDayOfMonth(dayOfMonth);
-            if (result.getDayOfWeek() == DateTimeConstants.SATURDAY) {
-                result = result.minusDays(1);
-            } else if (result.getDayOfWeek() == DateTimeConstants.SUNDAY) {
-                result = result.plusDays(1);
-            }
-
-            if (result.isAfter(date)) {
-                return result;
-            } else {
-                result = result.plusMonths(1);
-            }
+    @Override
+    protected void validatePart(ParsedPart part) {
+        if (part.modifier != null && !ALLOWED_MODIFIERS.contains(part.modifier)) {
+            throw new IllegalArgumentException(String.format("Invalid modifier [%s]", part.modifier));
+        } else if (part.incrementModifier != null && !"/".equals(part.incrementModifier)) {
+            throw new IllegalArgumentException(String.format("Invalid increment modifier [%s]", part.incrementModifier));
         }
     }
 
     @Override
-    protected void validatePart(FieldPart part) {
-        if (part.getModifier() != null && !ALLOWED_MODIFIERS.contains(part.getModifier())) {
-            throw new IllegalArgumentException(String.format("Invalid modifier [%s]", part.getModifier()));
-        } else if (part.getIncrementModifier() != null && !"/".equals(part.getIncrementModifier())) {
-            throw new IllegalArgumentException(String.format("Invalid increment modifier [%s]", part.getIncrementModifier()));
+    protected FieldPart compileRule(ParsedPart part) {
+        if ("L".equals(part.modifier)) {
+            return new FieldPart(FieldPart.LAST_DAY_OF_MONTH, part.from == ParsedPart.NONE ? 0 : part.from, 0);
+        } else if ("W".equals(part.modifier)) {
+            return new FieldPart(FieldPart.NEAREST_WEEKDAY, part.from, 0);
+        } else if ("LW".equals(part.modifier)) {
+            return new FieldPart(FieldPart.LAST_WEEKDAY, 0, 0);
         }
+        return super.compileRule(part);
     }
 }
@@ -4,6 +4,7 @@ import org.joda.time.LocalDate;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static fc.cron.CronFieldType.DAY_OF_WEEK;
@@ -20,110 +21,109 @@ class DayOfWeekField extends BasicField {
     }
 
     DayOfWeekField(String fieldExpr, boolean weekStartsSunday) {
-        super(weekStartsSunday ? DAY_OF_WEEK_US : DAY_OF_WEEK, fieldExpr);
+        this(fieldExpr, 0, fieldExpr.length(), weekStartsSunday);
+    }
+
+    DayOfWeekField(CharSequence expr, int start, int end, boolean weekStartsSunday) {
+        this(expr, start, end, weekStartsSunday, null);
+    }
+
+    DayOfWeekField(CharSequence expr, int start, int end, boolean weekStartsSunday, String hashKey) {
+        super(weekStartsSunday ? DAY_OF_WEEK_US : DAY_OF_WEEK, expr, start, end, hashKey);
+    }
+
+    DayOfWeekField(long[] bits, List<FieldPart> parts, boolean weekStartsSunday) {
+        super(weekStartsSunday ? DAY_OF_WEEK_US : DAY_OF_WEEK, bits, parts);
+    }
+
+    boolean weekStartsSunday() {
+        return fieldType == DAY_OF_WEEK_US;
     }
 
     boolean matches(LocalDate date) {
-        for (FieldPart part : parts) {
-            if (matches(part, date)) {
+        return new DaysOfYear(date.getYear(), DaysOfYear.ANY_MONTH, DaysOfYear.ANY_DAY_OF_MONTH, this).matches(date.getDayOfYear());
+    }
+
+    boolean matches(int year, int month, int dayOfMonth, int dayOfWeek) {
+        for (int i = 0; i < parts.size(); i++) {
+            if (matches(parts.get(i), year, month, dayOfMonth, dayOfWeek)) {
                 return true;
             }
         }
-        return matches(date.getDayOfWeek());
+        return matches(dayOfWeek);
     }
 
-    private boolean matches(FieldPart part, LocalDate date) {
-        if ("L".equals(part.getModifier())) {
-            return date.getDayOfWeek() == part.getFrom() && date.getDayOfMonth() > (date.dayOfMonth().getMaximumValue() - DAYS_PER_WEEK);
-        } else if ("#".equals(part.getIncrementModifier())) {
-            if (date.getDayOfWeek() == part.getFrom()) {
-                int num = date.getDayOfMonth() / DAYS_PER_WEEK;
-                return part.getIncrement() == (date.getDayOfMonth() % DAYS_PER_WEEK == 0 ? num : num + 1);
-            }
-            return false;
-        } else if ("?".equals(part.getModifier())) {
-            return true;
-        } else {
-            return false;
+    private boolean matches(FieldPart part, int year, int month, int dayOfMonth, int dayOfWeek) {
+        switch (part.getOpcode()) {
+            case FieldPart.LAST_DAY_OF_WEEK:
+                return dayOfWeek == part.getValue() && dayOfMonth > (CalendarMath.lengthOfMonth(year, month) - DAYS_PER_WEEK);
+            case FieldPart.NTH_DAY_OF_WEEK:
+                if (dayOfWeek == part.getValue()) {
+                    int num = dayOfMonth / DAYS_PER_WEEK;
+                    return part.getNth() == (dayOfMonth % DAYS_PER_WEEK == 0 ? num : num + 1);
+                }
+                return false;
+            default:
+                throw new IllegalStateException("Unknown rule: " + part);
         }
     }
 
     LocalDate nextDate(LocalDate date) {
-        LocalDate result = null;
-        for (FieldPart part : parts) {
-            LocalDate partDate = date;
-            if ("?".equals(part.getModifier())) {
-                partDate = date.plusDays(1);
-            } else if ("L".equals(part.getModifier())) {
-                partDate = nextLastDayOfWeek(date, part.getFrom());
-            } else if ("#".equals(part.getIncrementModifier())) {
-                partDate = nextNthDay(date, part.getFrom(), part.getIncrement());
-            }
-
-            result = result != null && result.isBefore(partDate) ? result : partDate;
-        }
+        int next = DaysOfYear.nextDate(CalendarMath.date(date.getYear(), date.getMonthOfYear(), date.getDayOfMonth()),
+                DaysOfYear.ANY_DAY_OF_MONTH, this);
+        return next < 0 ? null : new LocalDate(CalendarMath.year(next), CalendarMath.month(next), CalendarMath.dayOfMonth(next));
+    }
 
-        if (hasValues()) {
-            LocalDate partDate = date.plusDays(1);
-            int weekday = nextValue(partDate.getDayOfWeek());
-            if (weekday > 0) {
-                partDate = partDate.withDayOfWeek(weekday);
-            } else {
-                partDate = partDate.plusWeeks(1).withDayOfWeek(nextValue(fieldType.getFrom()));
-            }
-            result = result != null && result.isBefore(partDate) ? result : partDate;
+    @Override
+    protected int mapNumber(int value) {
+        // Use 1-7 for weekdays, but 0 will also represent sunday (linux practice)
+        if (value == 0) {
+            return 7;
         }
-
-        return result;
+        return fieldType != DAY_OF_WEEK_US ? value : (value + 6 == 7 ? 7 : (value + 6) % 7);
     }
 
-    private LocalDate nextLastDayOfWeek(LocalDate date, int dayOfWeek) {
-        LocalDate lastWeekDay = date.dayOfMonth().withMaximumValue().minusWeeks(1).withDayOfWeek(dayOfWeek);
-        if (date.isBefore(lastWeekDay)) {
-            return lastWeekDay;
-        } else {
-            return date.plusMonths(1).dayOfMonth().withMaximumValue().minusWeeks(1).withDayOfWeek(dayOfWeek);
-        }
+    @Override
+    protected String canonicalValue(int value) {
+        // names mean the same whether the week starts on Sunday or Monday
+        return fieldType.getNames().get(value - 1);
     }
 
-    private LocalDate nextNthDay(LocalDate date, int dayOfWeek, int nth) {
-        LocalDate next = date;
-        while (true) {
-            LocalDate start = next.dayOfMonth().withMinimumValue();
-            next = start.withDayOfWeek(dayOfWeek);
-            next = next.plusWeeks(nth - (start.getMonthOfYear() != next.getMonthOfYear() ? 0 : 1));
-
-            if (start.getMonthOfYear() == next.getMonthOfYear() && next.isAfter(date)) {
-                return next;
-            } else {
-                next = next.plusMonths(1);
-            }
+    @Override
+    protected String canonicalPart(FieldPart part) {
+        switch (part.getOpcode()) {
+            case FieldPart.LAST_DAY_OF_WEEK:
+                return canonicalValue(part.getValue()) + "L";
+            case FieldPart.NTH_DAY_OF_WEEK:
+                return canonicalValue(part.getValue()) + "#" + part.getNth();
+            default:
+                return super.canonicalPart(part);
         }
     }
 
     @Override
-    protected Integer mapValue(String value) {
-        // Use 1-7 for weekdays, but 0 will also represent sunday (linux practice)
-        if ("0".equals(value)) {
-            return 7;
-        } else {
-            try {
-                int result = Integer.parseInt(value);
-                return fieldType != DAY_OF_WEEK_US ? result : (result + 6 == 7 ? 7 : (result + 6) % 7);
-            } catch (Exception e) {
-                return super.mapValue(value);
-            }
+    protected void validatePart(ParsedPart part) {
+        if (part.modifier != null && !ALLOWED_MODIFIERS.contains(part.modifier)) {
+            throw new IllegalArgumentException(String.format("Invalid modifier [%s]", part.modifier));
+        } else if (part.incrementModifier != null && !ALLOWED_INCREMENTS.contains(part.incrementModifier)) {
+            throw new IllegalArgumentException(String.format("Invalid increment modifier [%s]", part.incrementModifier));
+        } else if ("#".equals(part.incrementModifier) && part.increment > 5) {
+            throw new IllegalArgumentException(String.format("Invalid nth increment modifier [%d]", part.increment));
         }
     }
 
     @Override
-    protected void validatePart(FieldPart part) {
-        if (part.getModifier() != null && !ALLOWED_MODIFIERS.contains(part.getModifier())) {
-            throw new IllegalArgumentException(String.format("Invalid modifier [%s]", part.getModifier()));
-        } else if (part.getIncrementModifier() != null && !ALLOWED_INCREMENTS.contains(part.getIncrementModifier())) {
-            throw new IllegalArgumentException(String.format("Invalid increment modifier [%s]", part.getIncrementModifier()));
-        } else if ("#".equals(part.getIncrementModifier()) && part.getIncrement() > 5) {
-            throw new IllegalArgumentException(String.format("Invalid nth increment modifier [%d]", part.getIncrement()));
+    protected FieldPart compileRule(ParsedPart part) {
+        if ("L".equals(part.modifier)) {
+            if (part.from == ParsedPart.NONE) {
+                // L alone is the last day of every week
+                setValue(fieldType.getEnd());
+                return null;
+            }
+            return new FieldPart(FieldPart.LAST_DAY_OF_WEEK, part.from, 0);
+        } else if ("#".equals(part.incrementModifier)) {
+            return new FieldPart(FieldPart.NTH_DAY_OF_WEEK, part.from, part.increment);
         }
+        return super.compileRule(part);
     }
 }
@@ -0,0 +1,137 @@
+package fc.cron;
+
+/**
+ * The dates of a single year matching the month and both day fields of an expression, with the day of the year as the
+ * bit index. Rules like L, W, LW and # are evaluated once per day of the year when the mask is built, after which
+ * finding the next matching date is a bit scan. Instances are immutable.
+ */
+final class DaysOfYear {
+
+    /**
+     * Fields matching every month and every day, to build masks of a single day field.
+     */
+    static final SimpleField ANY_MONTH = new SimpleField(CronFieldType.MONTH, "*");
+    static final DayOfMonthField ANY_DAY_OF_MONTH = new DayOfMonthField("*");
+    static final DayOfWeekField ANY_DAY_OF_WEEK = new DayOfWeekField("*");
+
+    /**
+     * The calendar repeats within this many years, so a search for a matching date may stop after it.
+     */
+    private static final int CALENDAR_CYCLE = 400;
+
+    private final int year;
+    private final long[] words = new long[(366 + Long.SIZE) / Long.SIZE];
+
+    DaysOfYear(int year, SimpleField monthField, DayOfMonthField dayOfMonthField, DayOfWeekField dayOfWeekField) {
+        this.year = year;
+        int dayOfYear = 1;
+        int dayOfWeek = CalendarMath.dayOfWeek(CalendarMath.epochDay(year, 1, 1));
+        for (int month = 1; month <= 12; month++) {
+            int length = CalendarMath.lengthOfMonth(year, month);
+            if (monthField.matches(month)) {
+                for (int day = 1; day <= length; day++) {
+                    int weekday = (dayOfWeek + day - 2) % 7 + 1;
+                    if (dayOfMonthField.matches(year, month, day, weekday) && dayOfWeekField.matches(year, month, day, weekday)) {
+                        int i = dayOfYear + day - 1;
+                        words[i >>> 6] |= 1L << i;
+                    }
+                }
+            }
+            dayOfYear += length;
+            dayOfWeek = (dayOfWeek + length - 1) % 7 + 1;
+        }
+    }
+
+    int year() {
+        return year;
+    }
+
+    /**
+     * @return the first date after the packed {@code date} matching both day fields in any month, packed by {@link
+     * CalendarMath}, or -1 if there is none
+     */
+    static int nextDate(int date, DayOfMonthField dayOfMonthField, DayOfWeekField dayOfWeekField) {
+        int year = CalendarMath.year(date);
+        int dayOfYear = CalendarMath.dayOfYear(date) + 1;
+        for (int end = year + CALENDAR_CYCLE; year <= end; year++, dayOfYear = 1) {
+            int next = new DaysOfYear(year, ANY_MONTH, dayOfMonthField, dayOfWeekField).nextDayOfYear(dayOfYear);
+            if (next >= 0) {
+                return CalendarMath.dateOfYear(year, next);
+            }
+        }
+        return -1;
+    }
+
+    boolean matches(int dayOfYear) {
+        return (words[dayOfYear >>> 6] & 1L << dayOfYear) != 0;
+    }
+
+    /**
+     * @return the first matching day of the year which is equal to or greater than {@code dayOfYear}, or -1 if there
+     * is none left in the year
+     */
+    int nextDayOfYear(int dayOfYear) {
+        int w = dayOfYear >>> 6;
+        long word = words[w] & (-1L << dayOfYear);
+        while (word == 0) {
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return w * Long.SIZE + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @return the last matching day of the year which is equal to or less than {@code dayOfYear}, or -1 if there is
+     * none earlier in the year
+     */
+    int previousDayOfYear(int dayOfYear) {
+        int w = dayOfYear >>> 6;
+        long word = words[w] & ((2L << dayOfYear) - 1);
+        while (word == 0) {
+            if (--w < 0) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return w * Long.SIZE + Long.SIZE - 1 - Long.numberOfLeadingZeros(word);
+    }
+
+    /**
+     * @return the smallest number of days between consecutive matching days of the year, or -1 if fewer than two match
+     */
+    int minimumGap() {
+        int gap = -1;
+        for (int day = nextDayOfYear(1), next = day < 0 ? -1 : nextDayOfYear(day + 1); next >= 0; day = next, next = nextDayOfYear(next + 1)) {
+            gap = gap < 0 ? next - day : Math.min(gap, next - day);
+        }
+        return gap;
+    }
+
+    /**
+     * @return the largest number of days between consecutive matching days of the year, or -1 if fewer than two match
+     */
+    int maximumGap() {
+        int gap = -1;
+        for (int day = nextDayOfYear(1), next = day < 0 ? -1 : nextDayOfYear(day + 1); next >= 0; day = next, next = nextDayOfYear(next + 1)) {
+            gap = Math.max(gap, next - day);
+        }
+        return gap;
+    }
+
+    /**
+     * @return the number of matching days of the year in {@code [fromDayOfYear, toDayOfYear)}
+     */
+    int count(int fromDayOfYear, int toDayOfYear) {
+        int count = 0;
+        for (int i = fromDayOfYear; i < toDayOfYear; i = (i | (Long.SIZE - 1)) + 1) {
+            long word = words[i >>> 6] & (-1L << i);
+            if (toDayOfYear - (i & -Long.SIZE) < Long.SIZE) {
+                word &= (1L << toDayOfYear) - 1;
+            }
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
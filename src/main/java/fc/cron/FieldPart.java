@@ -1,61 +1,61 @@
 package fc.cron;
 
-class FieldPart {
-    private Integer from;
-    private Integer to;
-    private Integer increment;
-    private String modifier;
-    private String incrementModifier;
+/**
+ * A rule of a day field which is evaluated date by date, compiled by the parser to an opcode with int operands so that
+ * matching is a switch on ints. Plain values, ranges and steps are not parts, they are set in the bits of the field,
+ * as is '?'. Instances are immutable.
+ */
+final class FieldPart {
+    /**
+     * {@code L} or {@code L-value}: the last day of the month, less {@link #getValue()} days.
+     */
+    static final int LAST_DAY_OF_MONTH = 1;
+    /**
+     * {@code valueW}: the weekday nearest to day {@link #getValue()} of the month.
+     */
+    static final int NEAREST_WEEKDAY = 2;
+    /**
+     * {@code LW}: the last weekday of the month.
+     */
+    static final int LAST_WEEKDAY = 3;
+    /**
+     * {@code valueL}: the last day of week {@link #getValue()} in the month.
+     */
+    static final int LAST_DAY_OF_WEEK = 4;
+    /**
+     * {@code value#nth}: day of week {@link #getValue()} number {@link #getNth()} in the month.
+     */
+    static final int NTH_DAY_OF_WEEK = 5;
+
+    private final int opcode;
+    private final int value;
+    private final int nth;
+
+    FieldPart(int opcode, int value, int nth) {
+        this.opcode = opcode;
+        this.value = value;
+        this.nth = nth;
+    }
+
+    int getOpcode() {
+        return opcode;
+    }
+
+    int getValue() {
+        return value;
+    }
+
+    int getNth() {
+        return nth;
+    }
 
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("FieldPart{");
-        sb.append("from=").append(getFrom());
-        sb.append(", to=").append(getTo());
-        sb.append(", increment=").append(getIncrement());
-        sb.append(", modifier='").append(getModifier()).append('\'');
-        sb.append(", incrementModifier='").append(getIncrementModifier()).append('\'');
+        sb.append("opcode=").append(opcode);
+        sb.append(", value=").append(value);
+        sb.append(", nth=").append(nth);
         sb.append('}');
         return sb.toString();
     }
-
-    public Integer getFrom() {
-        return from;
-    }
-
-    public void setFrom(Integer from) {
-        this.from = from;
-    }
-
-    public Integer getTo() {
-        return to;
-    }
-
-    public void setTo(Integer to) {
-        this.to = to;
-    }
-
-    public Integer getIncrement() {
-        return increment;
-    }
-
-    public void setIncrement(Integer increment) {
-        this.increment = increment;
-    }
-
-    public String getModifier() {
-        return modifier;
-    }
-
-    public void setModifier(String modifier) {
-        this.modifier = modifier;
-    }
-
-    public String getIncrementModifier() {
-        return incrementModifier;
-    }
-
-    public void setIncrementModifier(String incrementModifier) {
-        this.incrementModifier = incrementModifier;
-    }
 }
@@ -0,0 +1,23 @@
+package fc.cron;
+
+/**
+ * How a matching wall-clock time which does not exist, because the clocks are set forward over it, is handled. The
+ * examples are for a gap from 02:00 to 03:00.
+ *
+ * @see CronExpression#withGapPolicy(GapPolicy)
+ */
+public enum GapPolicy {
+    /**
+     * The time fires moved forward by the length of the gap, e.g. 02:30 fires at 03:30. This is how Joda-Time and
+     * {@code java.time} resolve such times, and the default.
+     */
+    SHIFT_FORWARD,
+    /**
+     * The time fires at the end of the gap, e.g. 02:30 fires at 03:00. All times in the same gap fire together, once.
+     */
+    NEXT_VALID_TIME,
+    /**
+     * The time does not fire.
+     */
+    SKIP
+}
@@ -0,0 +1,90 @@
+package fc.cron;
+
+/**
+ * A search for the wall-clock times matching a schedule, together with the mapping of those times to instants. Where
+ * a daylight saving transition skips or repeats a matching time, the mapping follows the {@link GapPolicy} and
+ * {@link OverlapPolicy}, the same whatever the schedule is read from. Searches which can also run backwards extend
+ * {@link ReversibleLocalTimeSearch}.
+ */
+abstract class LocalTimeSearch {
+
+    /**
+     * Returned when the search moved past its barrier, or when nothing ever matches.
+     */
+    static final long BARRIER_REACHED = -2;
+
+    /**
+     * @return the first matching wall-clock time after {@code afterLocal}, {@link CronExpression#NO_TIME} if there is
+     * none within the years of the year field, or {@link #BARRIER_REACHED}
+     */
+    abstract long nextLocalTime(long afterLocal, long barrierLocal);
+
+    /**
+     * Finds the first matching wall-clock time after {@code afterLocal} and maps it to an instant, following the gap
+     * and overlap policies where it is skipped or repeated. Wall-clock time does not always move forward with the
+     * instant: times repeated by an overlap come again after the clocks are set back, and times shifted out of a gap
+     * land among the times following it, so those are searched separately and the earliest instant wins.
+     *
+     * @param afterLocal the wall-clock time of {@code afterTime}
+     * @return the next instant, {@link CronExpression#NO_TIME} or {@link #BARRIER_REACHED}
+     */
+    final long nextTime(long afterTime, long afterLocal, long barrierLocal, ZoneOffsets offsets, GapPolicy gapPolicy,
+                        OverlapPolicy overlap) {
+        long result = Long.MAX_VALUE;
+        int i = offsets.transitionBefore(afterLocal);
+        if (i >= 0 && offsets.isGap(i)) {
+            if (gapPolicy == GapPolicy.SHIFT_FORWARD && afterLocal < 2 * offsets.localEnd(i) - offsets.localStart(i)) {
+                // shortly after a gap, the times shifted out of it are still to come
+                long shifted = nextLocalTime(afterTime + offsets.offsetBefore(i), barrierLocal);
+                if (shifted >= 0 && shifted < offsets.localEnd(i)) {
+                    result = shifted - offsets.offsetBefore(i);
+                }
+            }
+        } else if (i >= 0 && overlap != OverlapPolicy.EARLIER && afterTime < offsets.instant(i)) {
+            // in the first pass of an overlap, the times before afterLocal come again in the second
+            long repeated = nextLocalTime(offsets.localStart(i) - 1, barrierLocal);
+            if (repeated >= 0 && repeated < offsets.localEnd(i)) {
+                result = repeated - offsets.offsetAfter(i);
+            }
+        }
+
+        long local = afterLocal;
+        while (true) {
+            long nextLocal = nextLocalTime(local, barrierLocal);
+            if (nextLocal < 0) {
+                return result != Long.MAX_VALUE ? result : nextLocal;
+            }
+            i = offsets.transitionBefore(nextLocal);
+            long nextTime;
+            if (!offsets.contains(i, nextLocal)) {
+                nextTime = nextLocal - offsets.offsetAtLocal(nextLocal);
+            } else if (offsets.isGap(i)) {
+                if (gapPolicy == GapPolicy.SKIP) {
+                    local = offsets.localEnd(i) - 1;
+                    continue;
+                } else if (gapPolicy == GapPolicy.NEXT_VALID_TIME) {
+                    nextTime = offsets.instant(i);
+                } else {
+                    nextTime = nextLocal - offsets.offsetBefore(i);
+                    // a time following the gap may come before the shifted one
+                    long following = nextLocalTime(offsets.localEnd(i) - 1, barrierLocal);
+                    if (following >= 0 && following - offsets.offsetAfter(i) < nextTime) {
+                        nextTime = following - offsets.offsetAfter(i);
+                    }
+                }
+            } else {
+                long first = nextLocal - offsets.offsetBefore(i);
+                if (overlap != OverlapPolicy.LATER && first > afterTime) {
+                    nextTime = first;
+                } else if (overlap != OverlapPolicy.EARLIER) {
+                    nextTime = nextLocal - offsets.offsetAfter(i);
+                } else {
+                    // the first pass is over, which is the only one that fires
+                    local = nextLocal;
+                    continue;
+                }
+            }
+            return Math.min(result, nextTime);
+        }
+    }
+}
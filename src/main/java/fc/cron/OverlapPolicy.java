@@ -0,0 +1,28 @@
+package fc.cron;
+
+/**
+ * How a matching wall-clock time which occurs twice, because the clocks are set back over it, is handled. The examples
+ * are for clocks set back from 03:00 to 02:00, which repeats the times from 02:00 to 03:00.
+ *
+ * @see CronExpression#withOverlapPolicy(OverlapPolicy)
+ */
+public enum OverlapPolicy {
+    /**
+     * Expressions matching every hour fire both times like {@link #BOTH}, the others fire once like {@link #EARLIER}.
+     * This is how cron daemons treat the repeated hour and the default: an hourly job runs in every hour of the longer
+     * day, while a daily job does not run twice.
+     */
+    CRON,
+    /**
+     * The time fires once, the first time it occurs, before the clocks are set back.
+     */
+    EARLIER,
+    /**
+     * The time fires once, the second time it occurs, after the clocks are set back.
+     */
+    LATER,
+    /**
+     * The time fires both times it occurs, so that an hourly job runs every hour of the longer day.
+     */
+    BOTH
+}
@@ -0,0 +1,73 @@
+package fc.cron;
+
+/**
+ * A {@link LocalTimeSearch} which also searches backwards, mapping the previous matching wall-clock time to an instant
+ * by the same policies.
+ */
+abstract class ReversibleLocalTimeSearch extends LocalTimeSearch {
+
+    /**
+     * @return the last matching wall-clock time before {@code beforeLocal}, {@link CronExpression#NO_TIME} if there is
+     * none within the years of the year field, or {@link #BARRIER_REACHED}
+     */
+    abstract long previousLocalTime(long beforeLocal, long barrierLocal);
+
+    /**
+     * Mirror of {@link #nextTime(long, long, long, ZoneOffsets, GapPolicy, OverlapPolicy)}, the latest instant wins.
+     *
+     * @param beforeLocal the wall-clock time of {@code beforeTime}
+     * @return the previous instant, {@link CronExpression#NO_TIME} or {@link #BARRIER_REACHED}
+     */
+    final long previousTime(long beforeTime, long beforeLocal, long barrierLocal, ZoneOffsets offsets, GapPolicy gapPolicy,
+                            OverlapPolicy overlap) {
+        long result = Long.MIN_VALUE;
+        int i = offsets.transitionBefore(beforeLocal);
+        if (i >= 0 && !offsets.isGap(i) && overlap != OverlapPolicy.LATER && beforeTime >= offsets.instant(i)
+                && beforeLocal < offsets.localEnd(i)) {
+            // in the second pass of an overlap, the times after beforeLocal came in the first
+            long repeated = previousLocalTime(offsets.localEnd(i), barrierLocal);
+            if (repeated >= offsets.localStart(i)) {
+                result = repeated - offsets.offsetBefore(i);
+            }
+        }
+
+        long local = beforeLocal;
+        while (true) {
+            long previousLocal = previousLocalTime(local, barrierLocal);
+            if (previousLocal < 0) {
+                return result != Long.MIN_VALUE ? result : previousLocal;
+            }
+            i = offsets.transitionBefore(previousLocal);
+            long previousTime;
+            if (!offsets.contains(i, previousLocal)) {
+                previousTime = previousLocal - offsets.offsetAtLocal(previousLocal);
+                if (i >= 0 && offsets.isGap(i) && gapPolicy == GapPolicy.SHIFT_FORWARD
+                        && previousLocal < 2 * offsets.localEnd(i) - offsets.localStart(i)) {
+                    // shortly after a gap, a time shifted out of it may come later
+                    long shifted = previousLocalTime(Math.min(offsets.localEnd(i), beforeTime + offsets.offsetBefore(i)), barrierLocal);
+                    if (shifted >= offsets.localStart(i)) {
+                        previousTime = Math.max(previousTime, shifted - offsets.offsetBefore(i));
+                    }
+                }
+            } else if (offsets.isGap(i)) {
+                previousTime = gapPolicy == GapPolicy.NEXT_VALID_TIME ? offsets.instant(i) : previousLocal - offsets.offsetBefore(i);
+                if (gapPolicy == GapPolicy.SKIP || previousTime >= beforeTime) {
+                    local = gapPolicy == GapPolicy.SKIP ? offsets.localStart(i) : previousLocal;
+                    continue;
+                }
+            } else {
+                long second = previousLocal - offsets.offsetAfter(i);
+                if (overlap != OverlapPolicy.EARLIER && second < beforeTime) {
+                    previousTime = second;
+                } else if (overlap != OverlapPolicy.LATER) {
+                    previousTime = previousLocal - offsets.offsetBefore(i);
+                } else {
+                    // the second pass is still to come, which is the only one that fires
+                    local = previousLocal;
+                    continue;
+                }
+            }
+            return Math.max(result, previousTime);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package fc.cron;
+
+/**
+ * An instant to search from, decomposed once into the facts every search from it needs: the wall-clock time in the
+ * zone, its packed date and second of day, and the barrier of the default search horizon. Shared by the expressions
+ * of a {@link CronBatch}. Instances are immutable.
+ */
+final class SearchStart {
+
+    private final long afterTime;
+    private final long afterLocal;
+    private final ZoneOffsets offsets;
+    /**
+     * The first second to check, the one following {@link #afterLocal}.
+     */
+    private final long epochSecond;
+    private final int date;
+    private final int secondOfDay;
+    private final long defaultBarrierLocal;
+
+    SearchStart(long afterTime, ZoneOffsets offsets) {
+        this.afterTime = afterTime;
+        this.offsets = offsets;
+        afterLocal = offsets.localOf(afterTime);
+        epochSecond = Math.floorDiv(afterLocal, CalendarMath.MILLIS_PER_SECOND) + 1;
+        long epochDay = Math.floorDiv(epochSecond, CalendarMath.SECONDS_PER_DAY);
+        date = CalendarMath.date(epochDay);
+        secondOfDay = (int) (epochSecond - epochDay * CalendarMath.SECONDS_PER_DAY);
+        defaultBarrierLocal = CalendarMath.plusYears(afterLocal, CronExpression.DEFAULT_SEARCH_HORIZON);
+    }
+
+    long afterTime() {
+        return afterTime;
+    }
+
+    long afterLocal() {
+        return afterLocal;
+    }
+
+    ZoneOffsets offsets() {
+        return offsets;
+    }
+
+    long epochSecond() {
+        return epochSecond;
+    }
+
+    int date() {
+        return date;
+    }
+
+    int secondOfDay() {
+        return secondOfDay;
+    }
+
+    long barrierLocal(int searchHorizon) {
+        return searchHorizon == CronExpression.DEFAULT_SEARCH_HORIZON ? defaultBarrierLocal : CalendarMath.plusYears(afterLocal, searchHorizon);
+    }
+}
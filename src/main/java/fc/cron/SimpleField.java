@@ -1,7 +1,21 @@
 package fc.cron;
 
+import java.util.Collections;
+
 class SimpleField extends BasicField {
     SimpleField(CronFieldType fieldType, String fieldExpr) {
         super(fieldType, fieldExpr);
     }
+
+    SimpleField(CronFieldType fieldType, CharSequence expr, int start, int end) {
+        super(fieldType, expr, start, end);
+    }
+
+    SimpleField(CronFieldType fieldType, CharSequence expr, int start, int end, String hashKey) {
+        super(fieldType, expr, start, end, hashKey);
+    }
+
+    SimpleField(CronFieldType fieldType, long[] bits) {
+        super(fieldType, bits, Collections.<FieldPart>emptyList());
+    }
 }
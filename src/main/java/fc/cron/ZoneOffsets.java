@@ -0,0 +1,199 @@
+package fc.cron;
+
+import org.joda.time.DateTimeZone;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The offset transitions of a zone over the years an expression can match, precomputed into sorted arrays so that
+ * mapping between instants and wall-clock times is a binary search. Each transition makes a range of wall-clock times
+ * ambiguous: skipped by a gap when the offset grows, or repeated by an overlap when it shrinks. Instances are immutable
+ * and cached by zone id, of which there are finitely many, so every zone is built once. Joda-Time and {@code java.time}
+ * zones are cached apart, as their time zone databases may differ.
+ */
+final class ZoneOffsets {
+
+    private static final long FROM = CalendarMath.epochDay(CronFieldType.YEAR.getFrom() - 1, 1, 1) * CalendarMath.MILLIS_PER_DAY;
+    private static final long TO = CalendarMath.epochDay(CronFieldType.YEAR.getTo() + 2, 1, 1) * CalendarMath.MILLIS_PER_DAY;
+    private static final ConcurrentMap<String, ZoneOffsets> JODA_CACHE = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, ZoneOffsets> JAVA_TIME_CACHE = new ConcurrentHashMap<>();
+
+    private final int initialOffset;
+    /**
+     * Instant of each transition, ascending.
+     */
+    private final long[] instants;
+    /**
+     * Offset in millis from the transition on.
+     */
+    private final int[] offsets;
+    /**
+     * Start and end of the ambiguous wall-clock times of each transition, both ascending.
+     */
+    private final long[] localStarts;
+    private final long[] localEnds;
+
+    private ZoneOffsets(int initialOffset, long[] instants, int[] offsets) {
+        this.initialOffset = initialOffset;
+        this.instants = instants;
+        this.offsets = offsets;
+        localStarts = new long[instants.length];
+        localEnds = new long[instants.length];
+        for (int i = 0; i < instants.length; i++) {
+            localStarts[i] = instants[i] + Math.min(offsetBefore(i), offsets[i]);
+            localEnds[i] = instants[i] + Math.max(offsetBefore(i), offsets[i]);
+        }
+    }
+
+    static ZoneOffsets of(DateTimeZone zone) {
+        ZoneOffsets result = JODA_CACHE.get(zone.getID());
+        if (result == null) {
+            Builder builder = new Builder(zone.getOffset(FROM));
+            for (long instant = zone.nextTransition(FROM); instant > FROM && instant < TO; ) {
+                builder.add(instant, zone.getOffset(instant));
+                long next = zone.nextTransition(instant);
+                instant = next == instant ? TO : next;
+            }
+            result = cache(JODA_CACHE, zone.getID(), builder.build());
+        }
+        return result;
+    }
+
+    static ZoneOffsets of(ZoneId zone) {
+        ZoneOffsets result = JAVA_TIME_CACHE.get(zone.getId());
+        if (result == null) {
+            ZoneRules rules = zone.getRules();
+            Builder builder = new Builder(rules.getOffset(Instant.ofEpochMilli(FROM)).getTotalSeconds() * (int) CalendarMath.MILLIS_PER_SECOND);
+            for (ZoneOffsetTransition t = rules.nextTransition(Instant.ofEpochMilli(FROM)); t != null && t.toEpochSecond() * CalendarMath.MILLIS_PER_SECOND < TO;
+                 t = rules.nextTransition(t.getInstant())) {
+                builder.add(t.toEpochSecond() * CalendarMath.MILLIS_PER_SECOND, t.getOffsetAfter().getTotalSeconds() * (int) CalendarMath.MILLIS_PER_SECOND);
+            }
+            result = cache(JAVA_TIME_CACHE, zone.getId(), builder.build());
+        }
+        return result;
+    }
+
+    private static ZoneOffsets cache(ConcurrentMap<String, ZoneOffsets> cache, String id, ZoneOffsets offsets) {
+        ZoneOffsets previous = cache.putIfAbsent(id, offsets);
+        return previous != null ? previous : offsets;
+    }
+
+    /**
+     * @return the offset in millis at {@code instant}
+     */
+    int offsetAt(long instant) {
+        int i = transitionAt(instant);
+        return i < 0 ? initialOffset : offsets[i];
+    }
+
+    /**
+     * @return the index of the last transition at or before {@code instant}, or -1
+     */
+    int transitionAt(long instant) {
+        int i = Arrays.binarySearch(instants, instant);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * @return the number of transitions
+     */
+    int size() {
+        return instants.length;
+    }
+
+    long localOf(long instant) {
+        return instant + offsetAt(instant);
+    }
+
+    /**
+     * @return the index of the last transition whose ambiguous times start at or before {@code local}, or -1
+     */
+    int transitionBefore(long local) {
+        int i = Arrays.binarySearch(localStarts, local);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * @return whether {@code local} is skipped or repeated by transition {@code i}
+     */
+    boolean contains(int i, long local) {
+        return i >= 0 && local >= localStarts[i] && local < localEnds[i];
+    }
+
+    /**
+     * @return the offset of {@code local}, which is neither skipped nor repeated
+     */
+    int offsetAtLocal(long local) {
+        int i = transitionBefore(local);
+        return i < 0 ? initialOffset : offsets[i];
+    }
+
+    /**
+     * Whether wall-clock time runs forward at a single offset from {@code fromLocal} to {@code toLocal}, far enough from
+     * any transition that the times after a gap or in an overlap do not interleave with the times of its gap or its
+     * other pass.
+     */
+    boolean isRegular(long fromLocal, long toLocal) {
+        int i = transitionBefore(toLocal);
+        return fromLocal < toLocal && (i < 0 || fromLocal >= 2 * localEnds[i] - localStarts[i]);
+    }
+
+    boolean isGap(int i) {
+        return offsets[i] > offsetBefore(i);
+    }
+
+    long instant(int i) {
+        return instants[i];
+    }
+
+    int offsetBefore(int i) {
+        return i == 0 ? initialOffset : offsets[i - 1];
+    }
+
+    int offsetAfter(int i) {
+        return offsets[i];
+    }
+
+    long localStart(int i) {
+        return localStarts[i];
+    }
+
+    long localEnd(int i) {
+        return localEnds[i];
+    }
+
+    private static final class Builder {
+        private final int initialOffset;
+        private long[] instants = new long[64];
+        private int[] offsets = new int[64];
+        private int size;
+
+        Builder(int initialOffset) {
+            this.initialOffset = initialOffset;
+        }
+
+        void add(long instant, int offset) {
+            // changes of the name or of the standard offset alone are not transitions of the wall-clock time
+            if (offset == (size == 0 ? initialOffset : offsets[size - 1])) {
+                return;
+            }
+            if (size == instants.length) {
+                instants = Arrays.copyOf(instants, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            instants[size] = instant;
+            offsets[size] = offset;
+            size++;
+        }
+
+        ZoneOffsets build() {
+            return new ZoneOffsets(initialOffset, Arrays.copyOf(instants, size), Arrays.copyOf(offsets, size));
+        }
+    }
+}
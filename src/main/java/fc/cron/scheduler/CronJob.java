@@ -0,0 +1,80 @@
+package fc.cron.scheduler;
+
+import fc.cron.CronExpression;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A task registered with a {@link CronScheduler}, run every time its expression matches until it is cancelled or the
+ * expression has no more times.
+ */
+public final class CronJob {
+    private final CronExpression expression;
+    private final Runnable task;
+    private volatile long nextTime;
+    private volatile boolean cancelled;
+    /**
+     * Counter of the scheduler, telling it when enough cancelled jobs wait in the wheel to purge them.
+     */
+    private final AtomicInteger cancellations;
+
+    // owned by the ticker thread of the scheduler
+    long deadline;
+    CronJob next;
+
+    CronJob(CronExpression expression, Runnable task) {
+        this(expression, task, new AtomicInteger());
+    }
+
+    CronJob(CronExpression expression, Runnable task, AtomicInteger cancellations) {
+        this.expression = expression;
+        this.task = task;
+        this.cancellations = cancellations;
+    }
+
+    public CronExpression getExpression() {
+        return expression;
+    }
+
+    Runnable getTask() {
+        return task;
+    }
+
+    /**
+     * @return the next time the task runs in milliseconds since the epoch, or {@link CronExpression#NO_TIME} if it
+     * will not run again
+     */
+    public long getNextTime() {
+        return cancelled ? CronExpression.NO_TIME : nextTime;
+    }
+
+    void setNextTime(long nextTime) {
+        this.nextTime = nextTime;
+    }
+
+    /**
+     * Stops further runs of the task. A run already handed to the executor is not interrupted.
+     */
+    public synchronized void cancel() {
+        if (!cancelled) {
+            cancelled = true;
+            cancellations.incrementAndGet();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return whether the task will not run again, because it was cancelled or the expression has no more times
+     */
+    public boolean isDone() {
+        return getNextTime() == CronExpression.NO_TIME;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s<%s>", getClass().getSimpleName(), expression);
+    }
+}
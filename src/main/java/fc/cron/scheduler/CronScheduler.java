@@ -0,0 +1,177 @@
+package fc.cron.scheduler;
+
+import fc.cron.CronExpression;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.DateTimeZone;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs tasks at the times given by their {@link CronExpression}. Jobs are held in a {@link TimingWheel} driven by a
+ * single ticker thread, which wakes up once a second, hands the tasks that are due to the executor and adds each job
+ * back at its next time. Adding a job and expiring it are both O(1), so the scheduler copes with a large number of
+ * jobs.
+ * <p>
+ * The time is taken from {@link DateTimeUtils#currentTimeMillis()} with a resolution of one second, and expressions
+ * are evaluated in the zone given to the scheduler. Jobs may be scheduled and cancelled from any thread.
+ * <p>
+ * Jobs with {@link CronExpression#equals(Object) equal} expressions which are due together share the search for their
+ * next time, so many jobs on a few distinct schedules cost a search per schedule rather than per job.
+ * <p>
+ * When the ticker falls behind, e.g. during a long garbage collection pause, while the host is suspended or when the
+ * scheduler is started late, the missed times are coalesced: each job due in the missed time runs once, and continues
+ * at its next time after now.
+ */
+public class CronScheduler implements AutoCloseable {
+    private final Executor executor;
+    private final DateTimeZone zone;
+    private final Queue<CronJob> added = new ConcurrentLinkedQueue<>();
+    private final TimingWheel wheel = new TimingWheel(currentSecond());
+    /**
+     * The previous and next time of the expressions expired in the current tick, owned by the ticker thread.
+     */
+    private final Map<CronExpression, long[]> nextTimes = new HashMap<>();
+    /**
+     * The time of the current tick in milliseconds since the epoch, owned by the ticker thread.
+     */
+    private long tickTime;
+    /**
+     * Jobs cancelled since the wheel was last purged of them.
+     */
+    private final AtomicInteger cancellations = new AtomicInteger();
+    private volatile boolean running;
+    private Thread ticker;
+
+    public CronScheduler(Executor executor) {
+        this(executor, DateTimeZone.getDefault());
+    }
+
+    public CronScheduler(Executor executor, DateTimeZone zone) {
+        if (executor == null || zone == null) {
+            throw new IllegalArgumentException("executor and zone must be given");
+        }
+        this.executor = executor;
+        this.zone = zone;
+    }
+
+    /**
+     * Schedules {@code task} to run on the executor at every time matching {@code expression}, starting with the next
+     * time after now. A run which the executor rejects, or which throws on the ticker thread of a direct executor, is
+     * skipped and the job keeps its next times.
+     *
+     * @return the job, which is already done if the expression has no next time
+     */
+    public CronJob schedule(CronExpression expression, Runnable task) {
+        if (expression == null || task == null) {
+            throw new IllegalArgumentException("expression and task must be given");
+        }
+        CronJob job = new CronJob(expression, task, cancellations);
+        long nextTime = expression.tryNextTimeAfter(DateTimeUtils.currentTimeMillis(), zone);
+        job.setNextTime(nextTime);
+        if (nextTime != CronExpression.NO_TIME) {
+            added.add(job);
+        }
+        return job;
+    }
+
+    /**
+     * Starts the ticker thread.
+     */
+    public synchronized void start() {
+        if (ticker != null) {
+            throw new IllegalStateException("Scheduler is already started");
+        }
+        running = true;
+        ticker = new Thread(this::run, "cron-scheduler");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Stops the ticker thread, without running any more tasks. The executor is not shut down.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        if (ticker != null) {
+            LockSupport.unpark(ticker);
+        }
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+    private void run() {
+        while (running) {
+            long now = DateTimeUtils.currentTimeMillis();
+            tickTime = now;
+            for (CronJob job = added.poll(); job != null; job = added.poll()) {
+                add(job);
+            }
+            int cancelled = cancellations.get();
+            // sweeping once as many jobs were cancelled as half of those waiting costs amortized O(1) per cancellation
+            if (cancelled > 0 && cancelled >= wheel.size() / 2) {
+                cancellations.addAndGet(-cancelled);
+                wheel.purge();
+            }
+            wheel.advance(Math.floorDiv(now, 1000), this::expire);
+            nextTimes.clear();
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1000 - Math.floorMod(now, 1000)));
+        }
+    }
+
+    private void add(CronJob job) {
+        if (job.isCancelled()) {
+            return;
+        }
+        // rounded up so that the task does not run early
+        job.deadline = Math.floorDiv(job.getNextTime() + 999, 1000);
+        if (!wheel.add(job)) {
+            // the ticker fell behind the time the job was scheduled for
+            expire(job);
+        }
+    }
+
+    private void expire(CronJob job) {
+        if (job.isCancelled()) {
+            return;
+        }
+        try {
+            executor.execute(job.getTask());
+        } catch (RuntimeException e) {
+            // rejected by the executor, or thrown by the task itself when the executor runs it on the ticker thread:
+            // the run is skipped, the job stays scheduled
+        }
+        // from now rather than from the time which was due, so that the times missed while behind run only once
+        job.setNextTime(nextTimeAfter(job.getExpression(), Math.max(job.getNextTime(), tickTime)));
+        if (job.getNextTime() != CronExpression.NO_TIME) {
+            add(job);
+        }
+    }
+
+    private long nextTimeAfter(CronExpression expression, long time) {
+        long[] times = nextTimes.get(expression);
+        if (times == null) {
+            times = new long[2];
+            times[0] = time;
+            times[1] = expression.tryNextTimeAfter(time, zone);
+            nextTimes.put(expression, times);
+        } else if (times[0] != time) {
+            times[0] = time;
+            times[1] = expression.tryNextTimeAfter(time, zone);
+        }
+        return times[1];
+    }
+
+    private static long currentSecond() {
+        return Math.floorDiv(DateTimeUtils.currentTimeMillis(), 1000);
+    }
+}
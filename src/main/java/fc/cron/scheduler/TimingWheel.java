@@ -0,0 +1,177 @@
+package fc.cron.scheduler;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel with a resolution of one second, holding jobs by their deadline in epoch seconds. The
+ * wheels have a slot for each second of a minute, minute of an hour, hour of a day and for 512 days; jobs further away
+ * are kept in an overflow list. A job is added to the slot of the lowest wheel covering its deadline, and moved down
+ * a wheel when the time reaches the start of its slot, so adding is O(1) and each job is moved at most four times
+ * before it expires.
+ * <p>
+ * Cancelled jobs are dropped when they are moved down, and all of them at once by {@link #purge()}, so that jobs
+ * cancelled long before their deadline do not stay linked until it.
+ * <p>
+ * Not thread safe, jobs are linked through {@link CronJob#next} so that moving them does not allocate.
+ */
+final class TimingWheel {
+    private static final int[] SLOTS = {60, 60, 24, 512};
+    private static final long[] SLOT_SECONDS = {1, 60, 60 * 60, 24 * 60 * 60};
+    private static final long TOP_SPAN = SLOTS[3] * SLOT_SECONDS[3];
+
+    private final CronJob[][] wheels = new CronJob[SLOTS.length][];
+    private CronJob overflow;
+    private long now;
+    private int size;
+
+    TimingWheel(long now) {
+        this.now = now;
+        for (int level = 0; level < SLOTS.length; level++) {
+            wheels[level] = new CronJob[SLOTS[level]];
+        }
+    }
+
+    /**
+     * @return the time in epoch seconds up to which jobs have expired
+     */
+    long now() {
+        return now;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a job expiring at {@link CronJob#deadline}.
+     *
+     * @return false if the deadline is not after {@link #now()}, in which case the job is not added
+     */
+    boolean add(CronJob job) {
+        if (job.deadline <= now) {
+            return false;
+        }
+        place(job);
+        size++;
+        return true;
+    }
+
+    /**
+     * Moves the time forward to {@code time} one second at a time, passing each job to {@code expired} at its
+     * deadline. Jobs may be added again from {@code expired}.
+     */
+    void advance(long time, Consumer<CronJob> expired) {
+        while (now < time) {
+            now++;
+            cascade();
+            int slot = (int) Math.floorMod(now, SLOTS[0]);
+            CronJob job = wheels[0][slot];
+            wheels[0][slot] = null;
+            while (job != null) {
+                CronJob next = job.next;
+                job.next = null;
+                size--;
+                expired.accept(job);
+                job = next;
+            }
+        }
+    }
+
+    /**
+     * Moves the jobs of the slots starting at {@link #now} down a wheel, highest wheel first.
+     */
+    private void cascade() {
+        if (Math.floorMod(now, SLOT_SECONDS[1]) != 0) {
+            return;
+        }
+        int level = 1;
+        while (level + 1 < SLOTS.length && Math.floorMod(now, SLOT_SECONDS[level + 1]) == 0) {
+            level++;
+        }
+        if (level == SLOTS.length - 1 && Math.floorMod(now, TOP_SPAN) == 0) {
+            CronJob job = overflow;
+            overflow = null;
+            replace(job);
+        }
+        for (; level > 0; level--) {
+            int slot = (int) Math.floorMod(Math.floorDiv(now, SLOT_SECONDS[level]), SLOTS[level]);
+            CronJob job = wheels[level][slot];
+            wheels[level][slot] = null;
+            replace(job);
+        }
+    }
+
+    /**
+     * Unlinks the cancelled jobs from every slot and from the overflow list.
+     *
+     * @return the number of jobs removed
+     */
+    int purge() {
+        int removed = 0;
+        for (CronJob[] slots : wheels) {
+            for (int slot = 0; slot < slots.length; slot++) {
+                int before = size;
+                slots[slot] = withoutCancelled(slots[slot]);
+                removed += before - size;
+            }
+        }
+        int before = size;
+        overflow = withoutCancelled(overflow);
+        return removed + before - size;
+    }
+
+    private CronJob withoutCancelled(CronJob first) {
+        CronJob head = null;
+        CronJob tail = null;
+        for (CronJob job = first; job != null; ) {
+            CronJob next = job.next;
+            job.next = null;
+            if (job.isCancelled()) {
+                size--;
+            } else if (tail == null) {
+                head = job;
+                tail = job;
+            } else {
+                tail.next = job;
+                tail = job;
+            }
+            job = next;
+        }
+        return head;
+    }
+
+    private void replace(CronJob job) {
+        while (job != null) {
+            CronJob next = job.next;
+            if (job.isCancelled()) {
+                job.next = null;
+                size--;
+            } else {
+                place(job);
+            }
+            job = next;
+        }
+    }
+
+    private void place(CronJob job) {
+        long delta = job.deadline - now;
+        if (delta <= 0) {
+            // reached by a cascade at its deadline, expires in this second
+            push(0, (int) Math.floorMod(now, SLOTS[0]), job);
+            return;
+        }
+        for (int level = 0; level < SLOTS.length; level++) {
+            if (delta < SLOTS[level] * SLOT_SECONDS[level]) {
+                push(level, (int) Math.floorMod(Math.floorDiv(job.deadline, SLOT_SECONDS[level]), SLOTS[level]), job);
+                return;
+            }
+        }
+        job.next = overflow;
+        overflow = job;
+    }
+
+    private void push(int level, int slot, CronJob job) {
+        job.next = wheels[level][slot];
+        wheels[level][slot] = job;
+    }
+}
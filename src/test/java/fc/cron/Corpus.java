@@ -0,0 +1,105 @@
+package fc.cron;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Expressions shared by the tests of the structures built over many expressions, such as the index, the codec, the
+ * table, the batch search and the load forecast, which are all checked against the search of {@link CronExpression}
+ * itself. The corpus covers steps, lists and ranges, every day rule, restricted years, a time in the daylight saving
+ * gap and a date which never occurs.
+ */
+final class Corpus {
+
+    static final String[] EXPRESSIONS = {
+            "* * * * * *",
+            "0 * * * * *",
+            "*/15 * * * * *",
+            "0 */5 * * * *",
+            "0 0 * * * *",
+            "0 0 12 * * ?",
+            "0 15 10 ? * MON-FRI",
+            "0 0/5 14,18 * * ?",
+            "*/7 0/5 14,18 * * ?",
+            "*/20 15 1-3 * * *",
+            "0 30 2 * * *",
+            "0 0 0 L * *",
+            "0 0 0 L-3 * *",
+            "0 0 0 LW * *",
+            "0 0 0 15W * *",
+            "0 0 0 1W,15W * *",
+            "0 0 0 15W,L * *",
+            "0 0 0 ? * 5#3",
+            "0 0 0 ? * FRIL",
+            "0 0 0 13 * FRI",
+            "0 0 0 * * * 2016",
+            "0 0 0 1 1 ? 2017,2019,2199",
+            "0 0 0 29 2 ? 1970-2199/4",
+            "0 0 0 1 1 ? 2030",
+            "0 0 0 30 2 ?",
+    };
+
+    /**
+     * The next time of expression {@code id} of a structure under test.
+     */
+    interface NextTimes {
+        long tryNextTimeAfter(int id, long afterTime);
+    }
+
+    private Corpus() {
+    }
+
+    static List<CronExpression> expressions() {
+        List<CronExpression> expressions = new ArrayList<CronExpression>();
+        for (String expr : EXPRESSIONS) {
+            expressions.add(new CronExpression(expr));
+        }
+        return expressions;
+    }
+
+    /**
+     * Asserts that {@code actual} finds the same next time as each expression after each of {@code afterTimes}, and
+     * then after each time found, {@code jumpMillis} later, for {@code steps} times in all.
+     */
+    static void assertNextTimes(List<CronExpression> expressions, DateTimeZone zone, long[] afterTimes, int steps, long jumpMillis,
+                                NextTimes actual) {
+        for (int id = 0; id < expressions.size(); id++) {
+            CronExpression expression = expressions.get(id);
+            for (long afterTime : afterTimes) {
+                long time = afterTime;
+                for (int step = 0; step < steps; step++) {
+                    long next = expression.tryNextTimeAfter(time, zone);
+                    assertThat(actual.tryNextTimeAfter(id, time)).as(expression + " after " + new DateTime(time, zone)).isEqualTo(next);
+                    if (next == CronExpression.NO_TIME) {
+                        break;
+                    }
+                    time = next + jumpMillis;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether {@code expression} fires at {@code second}, a whole second in milliseconds since the epoch
+     */
+    static boolean fires(CronExpression expression, long second, DateTimeZone zone) {
+        return expression.tryNextTimeAfter(second - 1000, zone) == second;
+    }
+
+    /**
+     * @return the times of {@code expression} from {@code from} (inclusive) to {@code to} (exclusive)
+     */
+    static List<Long> timesBetween(CronExpression expression, long from, long to, DateTimeZone zone) {
+        List<Long> times = new ArrayList<Long>();
+        for (long time = expression.tryNextTimeAfter(from - 1, zone); time != CronExpression.NO_TIME && time < to;
+             time = expression.tryNextTimeAfter(time, zone)) {
+            times.add(time);
+        }
+        return times;
+    }
+}
@@ -0,0 +1,49 @@
+package fc.cron;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CronBatchTest {
+
+    @Test
+    public void shall_find_same_times_as_expressions() throws Exception {
+        CronExpression[] expressions = new CronExpression[5000];
+        for (int i = 0; i < expressions.length; i++) {
+            CronExpression expression = new CronExpression(Corpus.EXPRESSIONS[i % Corpus.EXPRESSIONS.length]);
+            expressions[i] = i % 3 == 0 ? expression.withSearchHorizon(1) : expression;
+        }
+        DateTimeZone zone = DateTimeZone.forID("Europe/Oslo");
+        long[] out = new long[expressions.length];
+        // around both daylight saving transitions, where the policies decide
+        long[] starts = {new DateTime(2016, 2, 1, 10, 0, zone).getMillis(), new DateTime(2016, 3, 27, 1, 59, 59, zone).getMillis(),
+                new DateTime(2016, 10, 30, 2, 30, zone).getMillis(), new DateTime(2016, 10, 30, 2, 30, zone).getMillis() + 3600000L};
+        for (long start : starts) {
+            CronBatch.tryNextTimesAfter(expressions, start, zone, out);
+            Corpus.assertNextTimes(Arrays.asList(expressions), zone, new long[]{start}, 1, 0, (id, time) -> out[id]);
+            CronBatch.tryNextTimesAfter(expressions, start, ZoneId.of("Europe/Oslo"), out, new ForkJoinPool(2));
+            Corpus.assertNextTimes(Arrays.asList(expressions), zone, new long[]{start}, 1, 0, (id, time) -> out[id]);
+        }
+    }
+
+    @Test
+    public void shall_give_no_time_for_exhausted_expressions() throws Exception {
+        CronExpression[] expressions = {new CronExpression("0 0 0 1 1 ? 2016"), new CronExpression("0 0 0 30 2 ?"), new CronExpression("0 0 0 * * *")};
+        long[] out = new long[expressions.length];
+        CronBatch.tryNextTimesAfter(expressions, new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC).getMillis(), DateTimeZone.UTC, out);
+        assertThat(out[0]).isEqualTo(CronExpression.NO_TIME);
+        assertThat(out[1]).isEqualTo(CronExpression.NO_TIME);
+        assertThat(out[2]).isEqualTo(new DateTime(2017, 1, 2, 0, 0, DateTimeZone.UTC).getMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shall_reject_short_output() throws Exception {
+        CronBatch.tryNextTimesAfter(new CronExpression[]{new CronExpression("* * * * * *")}, 0, DateTimeZone.UTC, new long[0]);
+    }
+}
@@ -0,0 +1,113 @@
+package fc.cron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CronExpressionCacheTest {
+
+    @Test
+    public void shall_return_same_instance_for_same_expression() {
+        CronExpressionCache cache = new CronExpressionCache(10);
+        CronExpression first = cache.create("0 0 * * * *");
+
+        assertThat(cache.create("0 0 * * * *")).isSameAs(first);
+        assertThat(cache.create(" 0  0\t* * * * ")).isSameAs(first);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shall_ignore_case_of_names() {
+        CronExpressionCache cache = new CronExpressionCache(10);
+        assertThat(cache.create("0 0 12 ? jan mon-fri")).isSameAs(cache.create("0 0 12 ? JAN Mon-Fri"));
+    }
+
+    @Test
+    public void shall_key_on_flags() {
+        CronExpressionCache cache = new CronExpressionCache(10);
+        CronExpression mondayFirst = cache.get("0 0 * * 1", false, false);
+        CronExpression sundayFirst = cache.get("0 0 * * 1", false, true);
+
+        assertThat(sundayFirst).isNotSameAs(mondayFirst);
+        assertThat(cache.createWithoutSeconds("0 0 * * 1")).isSameAs(mondayFirst);
+        assertThat(cache.create("0 0 * * * 1")).isNotSameAs(mondayFirst);
+        assertThat(cache.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void shall_not_cache_invalid_expression() {
+        CronExpressionCache cache = new CronExpressionCache(10);
+        try {
+            cache.create("0 0 * * * * * *");
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shall_evict_when_full() {
+        CronExpressionCache cache = new CronExpressionCache(4);
+        for (int minute = 0; minute < 10; minute++) {
+            cache.create("0 " + minute + " * * * *");
+        }
+
+        assertThat(cache.size()).isEqualTo(4);
+        assertThat(cache.getMissCount()).isEqualTo(10);
+        assertThat(cache.getEvictionCount()).isEqualTo(6);
+    }
+
+    @Test
+    public void shall_keep_recently_used_expression() {
+        CronExpressionCache cache = new CronExpressionCache(4);
+        CronExpression hot = cache.create("0 0 * * * *");
+        for (int minute = 1; minute < 20; minute++) {
+            assertThat(cache.create("0 0 * * * *")).isSameAs(hot);
+            cache.create("0 " + minute + " * * * *");
+        }
+        assertThat(cache.create("0 0 * * * *")).isSameAs(hot);
+        assertThat(cache.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void shall_return_canonical_instance_to_concurrent_callers() throws Exception {
+        final CronExpressionCache cache = new CronExpressionCache(8);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<CronExpression>> results = new ArrayList<Future<CronExpression>>();
+            for (int i = 0; i < 100; i++) {
+                results.add(executor.submit(new Callable<CronExpression>() {
+                    @Override
+                    public CronExpression call() {
+                        return cache.create("0 */5 * * * *");
+                    }
+                }));
+            }
+            CronExpression expected = results.get(0).get();
+            for (Future<CronExpression> result : results) {
+                assertThat(result.get()).isSameAs(expected);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getHitCount() + cache.getMissCount()).isEqualTo(100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shall_not_allow_empty_cache() {
+        new CronExpressionCache(0);
+    }
+}
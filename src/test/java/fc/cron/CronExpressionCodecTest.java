@@ -0,0 +1,93 @@
+package fc.cron;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CronExpressionCodecTest {
+
+    @Test
+    public void shall_decode_equal_expression() {
+        List<CronExpression> expressions = new ArrayList<CronExpression>();
+        List<CronExpression> decodedExpressions = new ArrayList<CronExpression>();
+        for (String expr : Corpus.EXPRESSIONS) {
+            for (boolean weekStartsSunday : new boolean[]{false, true}) {
+                CronExpression expression = new CronExpression(expr, true, weekStartsSunday);
+                byte[] bytes = CronExpressionCodec.encode(expression);
+                assertThat(bytes.length).isEqualTo(CronExpressionCodec.encodedLength(expression));
+                assertThat(bytes.length).isLessThan(64);
+
+                CronExpression decoded = CronExpressionCodec.decode(bytes);
+                assertThat(decoded).isEqualTo(expression);
+                assertThat(decoded.toCanonicalString()).isEqualTo(expression.toCanonicalString());
+                assertThat(decoded.toString()).isEqualTo("CronExpression<" + expression.toCanonicalString() + ">");
+                expressions.add(expression);
+                decodedExpressions.add(decoded);
+            }
+        }
+        DateTimeZone zone = DateTimeZone.forID("America/New_York");
+        Corpus.assertNextTimes(expressions, zone, new long[]{new DateTime(2016, 1, 1, 0, 0, zone).getMillis()}, 20, 0,
+                (id, time) -> decodedExpressions.get(id).tryNextTimeAfter(time, zone));
+    }
+
+    @Test
+    public void shall_keep_search_horizon_and_policies() {
+        CronExpression expression = new CronExpression("0 30 2 * * *").withSearchHorizon(50)
+                .withGapPolicy(GapPolicy.SKIP).withOverlapPolicy(OverlapPolicy.BOTH);
+        CronExpression decoded = CronExpressionCodec.decode(CronExpressionCodec.encode(expression));
+        assertThat(decoded.getSearchHorizon()).isEqualTo(50);
+        assertThat(decoded.getGapPolicy()).isEqualTo(GapPolicy.SKIP);
+        assertThat(decoded.getOverlapPolicy()).isEqualTo(OverlapPolicy.BOTH);
+        assertThat(decoded).isEqualTo(expression);
+    }
+
+    @Test
+    public void shall_be_compact() {
+        assertThat(CronExpressionCodec.encode(new CronExpression("0 0 12 * * *")).length).isEqualTo(30);
+        assertThat(CronExpressionCodec.encode(new CronExpression("0 0 12 * * * 2020")).length).isEqualTo(33);
+        // '?' allows every day like '*', only 5#3 and FRIL are rules
+        assertThat(CronExpressionCodec.encode(new CronExpression("0 0 12 ? * 5#3,FRIL")).length).isEqualTo(35);
+    }
+
+    @Test
+    public void shall_read_and_write_in_place() {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        for (String expr : Corpus.EXPRESSIONS) {
+            CronExpressionCodec.encode(new CronExpression(expr), buffer);
+        }
+        buffer.flip();
+        for (String expr : Corpus.EXPRESSIONS) {
+            assertThat(CronExpressionCodec.decode(buffer)).isEqualTo(new CronExpression(expr));
+        }
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void shall_reject_invalid_encoding() {
+        byte[] bytes = CronExpressionCodec.encode(new CronExpression("0 0 0 L * *"));
+        byte[] otherVersion = bytes.clone();
+        otherVersion[0] = CronExpressionCodec.VERSION + 1;
+        byte[] unknownRule = bytes.clone();
+        unknownRule[bytes.length - 2] = 99;
+        byte[] outOfRange = bytes.clone();
+        outOfRange[2] = (byte) 0xFF;
+        byte[][] invalid = {otherVersion, unknownRule, outOfRange, Arrays.copyOf(bytes, bytes.length - 1),
+                Arrays.copyOf(bytes, bytes.length + 1), new byte[0]};
+        for (byte[] encoding : invalid) {
+            try {
+                CronExpressionCodec.decode(encoding);
+                fail("Decoded " + Arrays.toString(encoding));
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -18,19 +18,27 @@ package fc.cron;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeConstants;
 import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
 import org.joda.time.Hours;
 import org.joda.time.LocalDate;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class CronExpressionTest {
     DateTimeZone original;
@@ -116,6 +124,37 @@ public class CronExpressionTest {
         assertPossibleValues(new SimpleField(CronFieldType.MONTH, "7/6"), 7);
     }
 
+    @Test
+    public void shall_parse_years_spanning_several_words() throws Exception {
+        SimpleField field = new SimpleField(CronFieldType.YEAR, "1975,2040,2199");
+        assertPossibleValues(field, 1975, 2040, 2199);
+        assertThat(field.nextValue(1960)).isEqualTo(1975);
+        assertThat(field.nextValue(1976)).isEqualTo(2040);
+        assertThat(field.nextValue(2041)).isEqualTo(2199);
+        assertThat(field.nextValue(2200)).isEqualTo(-1);
+    }
+
+    @Test
+    public void shall_parse_names_ignoring_case() throws Exception {
+        assertPossibleValues(new SimpleField(CronFieldType.MONTH, "jan,Mar-may"), 1, 3, 4, 5);
+        assertPossibleValues(new DayOfWeekField("fri-Sun", false), 5, 6, 7);
+    }
+
+    @Test
+    public void shall_give_error_for_invalid_part() throws Exception {
+        try {
+            new SimpleField(CronFieldType.MINUTE, "5,1-");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).isEqualTo("Invalid cron field '1-' for field [MINUTE]");
+        }
+    }
+
+    @Test
+    public void shall_split_fields_on_any_whitespace() throws Exception {
+        assertThat(new CronExpression("0\t0  12\n* * ?").nextTimeAfter(new DateTime(2012, 4, 10, 13, 00))).isEqualTo(new DateTime(2012, 4, 11, 12, 00));
+    }
+
     @Test
     public void shall_parse_asterix() throws Exception {
         assertPossibleValues(new DayOfWeekField("*"), 1, 2, 3, 4, 5, 6, 7);
@@ -595,6 +634,15 @@ public class CronExpressionTest {
         assertThat(new DayOfWeekField("FRIL").nextDate(new LocalDate(2012, 2, 6))).isEqualTo(new LocalDate(2012, 2, 24));
     }
 
+    @Test
+    public void check_dayOfWeek_last_day_of_week() throws Exception {
+        // 2012-04-06 is a Friday
+        assertThat(new CronExpression("0 0 0 ? * L").nextTimeAfter(new DateTime(2012, 4, 6, 00, 00))).isEqualTo(new DateTime(2012, 4, 8, 00, 00));
+        assertThat(new CronExpression("0 0 0 ? * L", true, true).nextTimeAfter(new DateTime(2012, 4, 6, 00, 00))).isEqualTo(new DateTime(2012, 4, 7, 00, 00));
+        assertThat(new CronExpression("0 0 0 ? * L")).isEqualTo(new CronExpression("0 0 0 ? * SUN"));
+        assertThat(new CronExpression("0 0 0 ? * L", true, true).toCanonicalString()).isEqualTo("0 0 0 * * SAT");
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void check_dayOfWeek_invalid_modifier() throws Exception {
         new CronExpression("0 0 0 * * 5W");
@@ -712,4 +760,590 @@ public class CronExpressionTest {
     public void test_without_seconds() throws Exception {
         assertThat(CronExpression.createWithoutSeconds("* * 29 2 *").nextTimeAfter(new DateTime(2012, 3, 1, 00, 00))).isEqualTo(new DateTime(2016, 2, 29, 00, 00));
     }
+
+    @Test
+    public void check_next_time_in_millis() throws Exception {
+        CronExpression cron = new CronExpression("0 15 10 ? * FRI#3");
+        DateTimeZone zone = DateTimeZone.forID("America/New_York");
+        long after = new DateTime(2012, 4, 1, 0, 0, zone).getMillis();
+        assertThat(cron.nextTimeAfter(after, zone)).isEqualTo(new DateTime(2012, 4, 20, 10, 15, zone).getMillis());
+        assertThat(cron.nextTimeAfter(after, DateTimeZone.UTC)).isEqualTo(new DateTime(2012, 4, 20, 10, 15, DateTimeZone.UTC).getMillis());
+    }
+
+    @Test
+    public void check_next_time_in_millis_matches_date_time() throws Exception {
+        CronExpression cron = new CronExpression("0 0 0 LW * *");
+        DateTime after = new DateTime(2012, 9, 10, 00, 00);
+        assertThat(cron.nextTimeAfter(after.getMillis(), after.getZone())).isEqualTo(cron.nextTimeAfter(after).getMillis());
+    }
+
+    @Test
+    public void check_nth_day_of_week_combined_with_day_of_month() throws Exception {
+        // 29th of april 2015 is the fifth wednesday
+        assertThat(new CronExpression("0 0 3 29 * 3#5").nextTimeAfter(new DateTime(2014, 12, 8, 0, 0))).isEqualTo(new DateTime(2015, 4, 29, 3, 0));
+    }
+
+    @Test
+    public void check_day_before_1970_is_skipped() throws Exception {
+        assertThat(new CronExpression("0 0 0 1 1 *").nextTimeAfter(new DateTime(1965, 6, 1, 0, 0))).isEqualTo(new DateTime(1970, 1, 1, 0, 0));
+    }
+
+    @Test
+    public void check_rare_date_across_years() throws Exception {
+        CronExpression fridayThe13th = new CronExpression("0 0 0 13 * FRI");
+        assertThat(fridayThe13th.nextTimeAfter(new DateTime(2015, 11, 14, 0, 0))).isEqualTo(new DateTime(2016, 5, 13, 0, 0));
+        assertThat(fridayThe13th.nextTimeAfter(new DateTime(2016, 5, 13, 0, 0))).isEqualTo(new DateTime(2017, 1, 13, 0, 0));
+
+        // the nearest weekday to the 15th is the third friday only in months starting on a friday
+        CronExpression weekdayAndNthDay = new CronExpression("0 0 0 15W * 5#3");
+        assertThat(weekdayAndNthDay.nextTimeAfter(new DateTime(2016, 1, 16, 0, 0))).isEqualTo(new DateTime(2016, 4, 15, 0, 0));
+        assertThat(weekdayAndNthDay.nextTimeAfter(new DateTime(2016, 7, 16, 0, 0))).isEqualTo(new DateTime(2017, 9, 15, 0, 0));
+    }
+
+    @Test
+    public void check_iterator_matches_repeated_next_time_after() throws Exception {
+        DateTimeZone zone = DateTimeZone.forID("America/New_York");
+        String[] expressions = {"*/20 * 1-3 * * *", "0 30 2 * * *", "0 0 0 L * *", "0 15 10 ? * 5#3", "0 0 0 29 2 *", "0 */5 * * * *",
+                "*/15 * * * * *", "0 0 */2 * * *", "0 30 5,17 * * ?"};
+        DateTime[] starts = {new DateTime(2016, 3, 12, 23, 0, zone), new DateTime(2016, 11, 5, 23, 0, zone)};
+        for (String expression : expressions) {
+            CronExpression cron = new CronExpression(expression);
+            for (DateTime start : starts) {
+                Iterator<DateTime> iterator = cron.iterator(start);
+                DateTime expected = start;
+                for (int i = 0; i < 1000 && expected.getYear() < 2100; i++) {
+                    expected = cron.nextTimeAfter(expected);
+                    assertThat(iterator.next()).as(expression + " #" + i).isEqualTo(expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void check_iterator_ends_when_years_are_exhausted() throws Exception {
+        Iterator<DateTime> iterator = new CronExpression("0 0 12 1 1 ? 2021,2023").iterator(new DateTime(2020, 6, 1, 0, 0));
+        assertThat(iterator.next()).isEqualTo(new DateTime(2021, 1, 1, 12, 0));
+        assertThat(iterator.next()).isEqualTo(new DateTime(2023, 1, 1, 12, 0));
+        assertThat(iterator.hasNext()).isFalse();
+        try {
+            iterator.next();
+            fail("Expected exception");
+        } catch (NoSuchElementException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void check_stream() throws Exception {
+        List<DateTime> times = new CronExpression("0 0 10-11 * * MON-FRI").stream(new DateTime(2016, 1, 1, 10, 30))
+                .limit(4)
+                .collect(Collectors.toList());
+        assertThat(times).containsExactly(new DateTime(2016, 1, 1, 11, 0), new DateTime(2016, 1, 4, 10, 0),
+                new DateTime(2016, 1, 4, 11, 0), new DateTime(2016, 1, 5, 10, 0));
+    }
+
+    @Test
+    public void check_previous_time_before() throws Exception {
+        assertThat(new CronExpression("0 15 10 ? * 5#3").previousTimeBefore(new DateTime(2012, 5, 1, 0, 0))).isEqualTo(new DateTime(2012, 4, 20, 10, 15));
+        assertThat(new CronExpression("0 0 0 LW * *").previousTimeBefore(new DateTime(2012, 10, 1, 0, 0))).isEqualTo(new DateTime(2012, 9, 28, 0, 0));
+        assertThat(new CronExpression("0 0 0 15W * *").previousTimeBefore(new DateTime(2012, 9, 14, 0, 0))).isEqualTo(new DateTime(2012, 8, 15, 0, 0));
+        assertThat(new CronExpression("0 0 0 L * *").previousTimeBefore(new DateTime(2012, 3, 1, 0, 0))).isEqualTo(new DateTime(2012, 2, 29, 0, 0));
+        assertThat(new CronExpression("0 0 0 29 2 *").previousTimeBefore(new DateTime(2016, 2, 1, 0, 0))).isEqualTo(new DateTime(2012, 2, 29, 0, 0));
+        assertThat(new CronExpression("0 */15 9-17 * * MON-FRI").previousTimeBefore(new DateTime(2016, 1, 4, 9, 0))).isEqualTo(new DateTime(2016, 1, 1, 17, 45));
+    }
+
+    @Test
+    public void check_previous_time_before_is_strictly_before() throws Exception {
+        CronExpression everySecond = new CronExpression("* * * * * *");
+        assertThat(everySecond.previousTimeBefore(new DateTime(2016, 1, 1, 10, 0, 0, 0))).isEqualTo(new DateTime(2016, 1, 1, 9, 59, 59, 0));
+        assertThat(everySecond.previousTimeBefore(new DateTime(2016, 1, 1, 10, 0, 0, 500))).isEqualTo(new DateTime(2016, 1, 1, 10, 0, 0, 0));
+    }
+
+    @Test
+    public void check_previous_time_before_reverses_next_time_after() throws Exception {
+        String[] expressions = {"*/20 * 1-3 * * *", "0 30 12 * * *", "0 0 0 L-3 * *", "0 15 10 ? * 5#3", "0 0 8 1W * *", "0 0 0 LW * *",
+                "0 0 12 ? * FRIL", "0 0 0 29 2 *", "*/10 * * * * *", "0 0 */3 * * *"};
+        for (DateTimeZone zone : new DateTimeZone[]{DateTimeZone.UTC, DateTimeZone.forID("Europe/Oslo")}) {
+            for (String expression : expressions) {
+                CronExpression cron = new CronExpression(expression);
+                Iterator<DateTime> iterator = cron.iterator(new DateTime(2015, 12, 30, 0, 0, zone));
+                DateTime previous = iterator.next();
+                for (int i = 0; i < 500 && iterator.hasNext(); i++) {
+                    DateTime next = iterator.next();
+                    assertThat(cron.previousTimeBefore(next)).as(expression + " before " + next).isEqualTo(previous);
+                    previous = next;
+                }
+            }
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void check_previous_time_before_first_year() throws Exception {
+        new CronExpression("0 0 12 1 1 ? 2021,2023").previousTimeBefore(new DateTime(2021, 1, 1, 12, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void check_previous_time_before_invalid_date() throws Exception {
+        new CronExpression("0 0 0 30 2 ?").previousTimeBefore(new DateTime(2016, 1, 1, 0, 0));
+    }
+
+    @Test
+    public void check_count_between() throws Exception {
+        DateTime from = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        assertThat(new CronExpression("* * * * * *").countBetween(from, from.plusYears(1))).isEqualTo(366L * 24 * 60 * 60);
+        assertThat(new CronExpression("0 0 12 29 2 ?").countBetween(from, from.plusYears(9))).isEqualTo(3);
+        assertThat(new CronExpression("0 0 12 1 1 ? 2021,2023").countBetween(from, from.plusYears(20))).isEqualTo(2);
+        assertThat(new CronExpression("0 0 0 30 2 ?").countBetween(from, from.plusYears(20))).isEqualTo(0);
+        assertThat(new CronExpression("* * * * * *").countBetween(from, from)).isEqualTo(0);
+        assertThat(new CronExpression("* * * * * *").countBetween(from.plusDays(1), from)).isEqualTo(0);
+        // a time in the daylight saving gap still counts once
+        assertThat(new CronExpression("0 30 2 * * *").countBetween(new DateTime(2016, 3, 1, 0, 0), new DateTime(2016, 4, 1, 0, 0))).isEqualTo(31);
+    }
+
+    @Test
+    public void check_count_between_java_time() throws Exception {
+        ZoneId zone = ZoneId.of("Europe/Oslo");
+        Instant from = ZonedDateTime.of(2016, 3, 1, 0, 0, 0, 0, zone).toInstant();
+        Instant to = ZonedDateTime.of(2016, 4, 1, 0, 0, 0, 0, zone).toInstant();
+        assertThat(new CronExpression("0 30 2 * * *").countBetween(from, to, zone)).isEqualTo(31);
+        assertThat(new CronExpression("0 0 0 * * *").countBetween(from, to, zone)).isEqualTo(31);
+        // a fraction of a millisecond after a matching second leaves it out
+        assertThat(new CronExpression("0 0 0 * * *").countBetween(from.plusNanos(1), to.plusNanos(1), zone)).isEqualTo(31);
+        assertThat(new CronExpression("0 0 0 * * *").countBetween(to, from, zone)).isEqualTo(0);
+    }
+
+    @Test
+    public void check_count_between_daylight_saving_transitions() throws Exception {
+        DateTimeZone zone = DateTimeZone.forID("America/New_York");
+        // one hour more in November, one less in March
+        assertThat(new CronExpression("0 0 * * * *").countBetween(new DateTime(2024, 11, 1, 0, 0, zone), new DateTime(2024, 12, 1, 0, 0, zone)))
+                .isEqualTo(721);
+        assertThat(new CronExpression("0 0 * * * *").countBetween(new DateTime(2024, 3, 1, 0, 0, zone), new DateTime(2024, 4, 1, 0, 0, zone)))
+                .isEqualTo(743);
+
+        String[] expressions = {"0 0 * * * *", "0 */20 1-3 * * *", "0 30 2 * * *", "*/30 59 1 * * *", "0 0 0 * * *"};
+        DateTime[][] intervals = {
+                {new DateTime(2024, 3, 9, 0, 0, zone), new DateTime(2024, 11, 4, 0, 0, zone)},
+                {new DateTime(2024, 3, 10, 1, 59, 30, zone), new DateTime(2024, 3, 10, 3, 30, 0, 1, zone)},
+                {new DateTime(2024, 11, 3, 1, 30, zone), new DateTime(2024, 11, 3, 1, 30, zone).plusHours(1)}};
+        for (String expression : expressions) {
+            for (GapPolicy gapPolicy : GapPolicy.values()) {
+                for (OverlapPolicy overlapPolicy : OverlapPolicy.values()) {
+                    CronExpression cron = new CronExpression(expression).withGapPolicy(gapPolicy).withOverlapPolicy(overlapPolicy);
+                    for (DateTime[] interval : intervals) {
+                        long expected = 0;
+                        for (long time = cron.tryNextTimeAfter(interval[0].getMillis() - 1, zone); time < interval[1].getMillis();
+                             time = cron.tryNextTimeAfter(time, zone)) {
+                            expected++;
+                        }
+                        assertThat(cron.countBetween(interval[0], interval[1])).as(expression + " " + gapPolicy + " " + overlapPolicy
+                                + " in " + Arrays.toString(interval)).isEqualTo(expected);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void check_zone_offsets_cached_for_every_zone() throws Exception {
+        for (String id : ZoneId.getAvailableZoneIds()) {
+            ZoneOffsets.of(ZoneId.of(id));
+        }
+        assertThat(ZoneOffsets.of(ZoneId.of("Europe/Oslo"))).isSameAs(ZoneOffsets.of(ZoneId.of("Europe/Oslo")));
+        assertThat(ZoneOffsets.of(DateTimeZone.forID("Europe/Oslo"))).isSameAs(ZoneOffsets.of(DateTimeZone.forID("Europe/Oslo")));
+    }
+
+    @Test
+    public void check_count_between_matches_iteration() throws Exception {
+        String[] expressions = {"*/7 */13 1-3,22 * * *", "0 15 10 ? * 5#3", "0 0 8 1W * *", "30 0 0 LW * *", "0 0 12 ? * FRIL",
+                "0 0/5 14,18 * * MON-FRI"};
+        DateTime[][] intervals = {
+                {new DateTime(2015, 12, 30, 1, 0, 5, 500, DateTimeZone.UTC), new DateTime(2016, 3, 1, 22, 13, 7, DateTimeZone.UTC)},
+                {new DateTime(2016, 1, 4, 10, 15, DateTimeZone.UTC), new DateTime(2016, 1, 4, 18, 30, DateTimeZone.UTC)},
+                {new DateTime(2016, 4, 1, 14, 2, 0, 1), new DateTime(2017, 2, 28, 14, 0)}};
+        for (String expression : expressions) {
+            CronExpression cron = new CronExpression(expression);
+            for (DateTime[] interval : intervals) {
+                long expected = 0;
+                Iterator<DateTime> iterator = cron.iterator(interval[0].minusMillis(1));
+                while (iterator.next().isBefore(interval[1])) {
+                    expected++;
+                }
+                assertThat(cron.countBetween(interval[0], interval[1])).as(expression + " in " + Arrays.toString(interval)).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    public void check_try_next_time_after_returns_no_time() throws Exception {
+        DateTimeZone zone = DateTimeZone.forID("America/New_York");
+        long after = new DateTime(2024, 1, 1, 0, 0, zone).getMillis();
+        assertThat(new CronExpression("0 0 12 1 1 ? 2021,2023").tryNextTimeAfter(after, zone)).isEqualTo(CronExpression.NO_TIME);
+        assertThat(new CronExpression("0 0 0 30 2 ?").tryNextTimeAfter(after, zone)).isEqualTo(CronExpression.NO_TIME);
+        assertThat(new CronExpression("0 0 0 1 1 ?").tryNextTimeAfter(after, zone, after + 1000)).isEqualTo(CronExpression.NO_TIME);
+
+        CronExpression cron = new CronExpression("0 15 10 ? * FRI#3");
+        assertThat(cron.tryNextTimeAfter(after, zone)).isEqualTo(cron.nextTimeAfter(after, zone));
+    }
+
+    @Test
+    public void check_try_previous_time_before_returns_no_time() throws Exception {
+        DateTimeZone zone = DateTimeZone.forID("America/New_York");
+        long before = new DateTime(2021, 1, 1, 0, 0, zone).getMillis();
+        assertThat(new CronExpression("0 0 12 1 1 ? 2021,2023").tryPreviousTimeBefore(before, zone)).isEqualTo(CronExpression.NO_TIME);
+        assertThat(new CronExpression("0 0 0 30 2 ?").tryPreviousTimeBefore(before, zone)).isEqualTo(CronExpression.NO_TIME);
+        assertThat(new CronExpression("0 0 0 2 1 ?").tryPreviousTimeBefore(before, zone, before - 1000)).isEqualTo(CronExpression.NO_TIME);
+
+        CronExpression cron = new CronExpression("0 15 10 ? * FRI#3");
+        assertThat(cron.tryPreviousTimeBefore(before, zone)).isEqualTo(cron.previousTimeBefore(before, zone));
+    }
+
+    @Test
+    public void check_satisfiable() throws Exception {
+        assertThat(new CronExpression("0 0 0 29 2 *").isSatisfiable()).isTrue();
+        assertThat(new CronExpression("0 0 0 ? 2 FRI#5").isSatisfiable()).isTrue();
+        assertThat(new CronExpression("0 0 0 13 * FRI").isSatisfiable()).isTrue();
+        assertThat(new CronExpression("0 0 0 30 2 *").isSatisfiable()).isFalse();
+        assertThat(new CronExpression("0 0 0 31 4,6,9,11 *").isSatisfiable()).isFalse();
+        // february only has a fifth friday in leap years where it starts on a friday
+        assertThat(new CronExpression("0 0 0 ? 2 FRI#5 2021-2023").isSatisfiable()).isFalse();
+        assertThat(new CronExpression("0 0 0 ? 2 FRI#5 2021-2040").isSatisfiable()).isTrue();
+        assertThat(new CronExpression("0 0 0 1 * TUE 1980").isSatisfiable()).isTrue();
+        assertThat(new CronExpression("0 0 0 1 1 TUE 1980").isSatisfiable()).isTrue();
+        assertThat(new CronExpression("0 0 0 1 1 WED 1980").isSatisfiable()).isFalse();
+    }
+
+    @Test
+    public void check_unsatisfiable_expression_is_not_searched() throws Exception {
+        CronExpression cron = new CronExpression("0 0 0 31 4,6,9,11 *");
+        DateTime after = new DateTime(2016, 1, 1, 0, 0);
+        long farAway = after.plusYears(1000).getMillis() - after.getMillis();
+        assertThat(cron.tryNextTimeAfter(after.getMillis(), after.getZone(), after.getMillis() + farAway)).isEqualTo(CronExpression.NO_TIME);
+        assertThat(cron.tryPreviousTimeBefore(after.getMillis(), after.getZone(), after.getMillis() - farAway)).isEqualTo(CronExpression.NO_TIME);
+        assertThat(cron.countBetween(after, after.plusYears(100))).isEqualTo(0);
+        try {
+            cron.nextTimeAfter(after);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void check_search_horizon() throws Exception {
+        CronExpression cron = new CronExpression("0 0 0 1 1 ? 2030");
+        DateTime after = new DateTime(2016, 1, 1, 0, 0);
+        assertThat(cron.getSearchHorizon()).isEqualTo(CronExpression.DEFAULT_SEARCH_HORIZON);
+        assertThat(cron.tryNextTimeAfter(after.getMillis(), after.getZone())).isEqualTo(CronExpression.NO_TIME);
+
+        CronExpression longer = cron.withSearchHorizon(20);
+        assertThat(longer.getSearchHorizon()).isEqualTo(20);
+        assertThat(longer.nextTimeAfter(after)).isEqualTo(new DateTime(2030, 1, 1, 0, 0));
+        assertThat(longer.previousTimeBefore(new DateTime(2045, 1, 1, 0, 0))).isEqualTo(new DateTime(2030, 1, 1, 0, 0));
+        assertThat(longer.iterator(after).next()).isEqualTo(new DateTime(2030, 1, 1, 0, 0));
+        assertThat(longer.withSearchHorizon(20)).isSameAs(longer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void check_search_horizon_must_be_positive() throws Exception {
+        new CronExpression("* * * * * *").withSearchHorizon(0);
+    }
+
+    @Test
+    public void check_fixed_period() throws Exception {
+        assertThat(new CronExpression("*/10 * * * * *").getFixedPeriod()).isEqualTo(Duration.standardSeconds(10));
+        assertThat(new CronExpression("0 */5 * * * *").getFixedPeriod()).isEqualTo(Duration.standardMinutes(5));
+        assertThat(new CronExpression("0 0,30 * * * ?").getFixedPeriod()).isEqualTo(Duration.standardMinutes(30));
+        assertThat(new CronExpression("0 0 */2 * * *").getFixedPeriod()).isEqualTo(Duration.standardHours(2));
+        assertThat(new CronExpression("0 15 5/12 * * *").getFixedPeriod()).isEqualTo(Duration.standardHours(12));
+        assertThat(new CronExpression("0 0 12 ? * *").getFixedPeriod()).isEqualTo(Duration.standardDays(1));
+        assertThat(CronExpression.createWithoutSeconds("* * * * *").getFixedPeriod()).isEqualTo(Duration.standardMinutes(1));
+
+        assertThat(new CronExpression("0 */7 * * * *").getFixedPeriod()).isNull();
+        assertThat(new CronExpression("*/10 * 9-17 * * *").getFixedPeriod()).isNull();
+        assertThat(new CronExpression("0 0 12 * * MON").getFixedPeriod()).isNull();
+        assertThat(new CronExpression("0 0 12 * * * 2020").getFixedPeriod()).isNull();
+        assertThat(new CronExpression("0 0 5,18 * * *").getFixedPeriod()).isNull();
+
+        assertThat(new CronExpression("0 */5 * * * *").getFixedDuration()).isEqualTo(java.time.Duration.ofMinutes(5));
+        assertThat(new CronExpression("0 0 5,18 * * *").getFixedDuration()).isNull();
+    }
+
+    @Test
+    public void check_fixed_period_next_time_after() throws Exception {
+        CronExpression cron = new CronExpression("0 */5 * * * *");
+        assertThat(cron.nextTimeAfter(new DateTime(2016, 12, 31, 23, 57, 30))).isEqualTo(new DateTime(2017, 1, 1, 0, 0));
+        assertThat(cron.nextTimeAfter(new DateTime(2016, 1, 1, 10, 5, 0))).isEqualTo(new DateTime(2016, 1, 1, 10, 10, 0));
+        assertThat(cron.previousTimeBefore(new DateTime(2017, 1, 1, 0, 0))).isEqualTo(new DateTime(2016, 12, 31, 23, 55));
+        assertThat(cron.nextTimeAfter(new DateTime(1969, 12, 31, 23, 57, 30, DateTimeZone.UTC))).isEqualTo(new DateTime(1970, 1, 1, 0, 0, DateTimeZone.UTC));
+        assertThat(cron.tryNextTimeAfter(new DateTime(2199, 12, 31, 23, 57, 30, DateTimeZone.UTC).getMillis(), DateTimeZone.UTC)).isEqualTo(CronExpression.NO_TIME);
+        assertThat(new CronExpression("0 15 5/12 * * *").nextTimeAfter(new DateTime(2016, 1, 1, 17, 15))).isEqualTo(new DateTime(2016, 1, 2, 5, 15));
+    }
+
+    @Test
+    public void check_equals_compares_parsed_fields() throws Exception {
+        CronExpression cron = new CronExpression("0 0 * * * *");
+        assertThat(new CronExpression("0 0 0-23 * * *")).isEqualTo(cron);
+        assertThat(new CronExpression("0 0 */1 * * ?")).isEqualTo(cron);
+        assertThat(new CronExpression("0 0 */1 * * ?").hashCode()).isEqualTo(cron.hashCode());
+        assertThat(CronExpression.createWithoutSeconds("0 * * * *")).isEqualTo(cron);
+        assertThat(new CronExpression("0 0 12 * * mon-fri")).isEqualTo(new CronExpression("0 0 12 ? * 1,2,3-5"));
+        assertThat(new CronExpression("0 0 12 * * 2-6", true, true)).isEqualTo(new CronExpression("0 0 12 * * MON-FRI"));
+
+        assertThat(new CronExpression("0 0 12 * * 1-5", true, true)).isNotEqualTo(new CronExpression("0 0 12 * * 1-5"));
+        assertThat(new CronExpression("0 0 * * * * 2020")).isNotEqualTo(cron);
+        assertThat(new CronExpression("0 0 12 L * ?")).isNotEqualTo(new CronExpression("0 0 12 LW * ?"));
+        assertThat(cron.withSearchHorizon(20)).isNotEqualTo(cron);
+        assertThat(cron.withGapPolicy(GapPolicy.SKIP)).isNotEqualTo(cron);
+        assertThat(cron.withOverlapPolicy(OverlapPolicy.CRON)).isEqualTo(cron);
+        assertThat(cron.withOverlapPolicy(OverlapPolicy.BOTH)).isNotEqualTo(cron);
+    }
+
+    @Test
+    public void check_canonical_string() throws Exception {
+        assertThat(new CronExpression("0 0 0-23 * * *").toCanonicalString()).isEqualTo("0 0 * * * *");
+        assertThat(new CronExpression("*/15 5-10 0,1,2,12 ? JAN-MAR mon,wed,fri,sat").toCanonicalString())
+                .isEqualTo("0/15 5-10 0-2,12 * 1-3 MON,WED,FRI-SAT");
+        assertThat(new CronExpression("0 0 9-17/2 * * 1-7/2").toCanonicalString()).isEqualTo("0 0 9-17/2 * * MON-SUN/2");
+        assertThat(CronExpression.createWithoutSeconds("0 12 15W,L-3,LW,1 */3 ?").toCanonicalString())
+                .isEqualTo("0 0 12 1,15W,L-3,LW 1-10/3 *");
+        assertThat(new CronExpression("0 0 12 ? * 5L,FRI#3 2020-2022").toCanonicalString())
+                .isEqualTo("0 0 12 * * FRI#3,FRIL 2020-2022");
+
+        String[] expressions = {"0 0 9-17/2 * * 1-7/2", "*/7 * * * * 0/2", "0 0 12 ? * 5L,FRI#3 2020-2022", "0 0 0 LW,5 */2 ?"};
+        for (String expr : expressions) {
+            for (boolean weekStartsSunday : new boolean[]{false, true}) {
+                CronExpression cron = new CronExpression(expr, true, weekStartsSunday);
+                CronExpression parsed = new CronExpression(cron.toCanonicalString(), true, weekStartsSunday);
+                assertThat(parsed).isEqualTo(cron);
+                assertThat(new CronExpression(cron.toCanonicalString(), true, !weekStartsSunday)).isEqualTo(cron);
+                assertThat(parsed.nextTimeAfter(new DateTime(2020, 1, 1, 0, 0))).isEqualTo(cron.nextTimeAfter(new DateTime(2020, 1, 1, 0, 0)));
+            }
+        }
+    }
+
+    @Test
+    public void check_java_time() throws Exception {
+        ZoneId oslo = ZoneId.of("Europe/Oslo");
+        CronExpression cron = new CronExpression("0 30 2 * * *");
+        // the 2:30 of the spring gap is moved forward, the 2:30 of the autumn overlap fires once, in summer time
+        assertThat(cron.nextTimeAfter(ZonedDateTime.of(2012, 3, 25, 0, 0, 0, 0, oslo)))
+                .isEqualTo(ZonedDateTime.of(2012, 3, 25, 3, 30, 0, 0, oslo));
+        ZonedDateTime overlap = cron.nextTimeAfter(ZonedDateTime.of(2012, 10, 28, 0, 0, 0, 0, oslo));
+        assertThat(overlap.toOffsetDateTime().toString()).isEqualTo("2012-10-28T02:30+02:00");
+        ZonedDateTime next = cron.nextTimeAfter(overlap);
+        assertThat(next).isEqualTo(ZonedDateTime.of(2012, 10, 29, 2, 30, 0, 0, oslo));
+        // searching backwards from winter time skips the second 2:30
+        assertThat(cron.previousTimeBefore(next)).isEqualTo(overlap);
+        assertThat(cron.withOverlapPolicy(OverlapPolicy.LATER).previousTimeBefore(next).toOffsetDateTime().toString())
+                .isEqualTo("2012-10-28T02:30+01:00");
+
+        assertThat(new CronExpression("0 0 12 * * ?").previousTimeBefore(ZonedDateTime.of(2016, 1, 1, 12, 0, 0, 1, oslo)))
+                .isEqualTo(ZonedDateTime.of(2016, 1, 1, 12, 0, 0, 0, oslo));
+        assertThat(new CronExpression("0 0 12 * * ?").nextTimeAfter(Instant.parse("2016-01-01T11:00:00.000000001Z"), ZoneId.of("UTC")))
+                .isEqualTo(Instant.parse("2016-01-01T12:00:00Z"));
+    }
+
+    @Test
+    public void check_java_time_same_as_joda_time() throws Exception {
+        String[] expressions = {"0 30 2 * * *", "0 */20 1-3 * * *", "0 0 0 L * ?", "15 45 2 ? * SUN#5", "0 0 12 29 2 ?"};
+        String[] zones = {"Europe/Oslo", "America/New_York", "Australia/Lord_Howe", "Asia/Kolkata", "UTC"};
+        for (String expr : expressions) {
+            CronExpression cron = new CronExpression(expr);
+            for (String zone : zones) {
+                DateTimeZone jodaZone = DateTimeZone.forID(zone);
+                ZoneId zoneId = ZoneId.of(zone);
+                long time = new DateTime(2012, 1, 1, 0, 0, jodaZone).getMillis();
+                for (int i = 0; i < 40; i++) {
+                    long next = cron.nextTimeAfter(time, jodaZone);
+                    assertThat(cron.nextTimeAfter(Instant.ofEpochMilli(time), zoneId).toEpochMilli()).isEqualTo(next);
+                    assertThat(cron.previousTimeBefore(Instant.ofEpochMilli(next), zoneId).toEpochMilli())
+                            .isEqualTo(cron.previousTimeBefore(next, jodaZone));
+                    time = next;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void check_gap_policy() throws Exception {
+        CronExpression cron = new CronExpression("0 30 2 * * *");
+        DateTime before = new DateTime(2012, 3, 25, 0, 0);
+        assertThat(cron.nextTimeAfter(before)).isEqualTo(new DateTime(2012, 3, 25, 3, 30));
+        assertThat(cron.withGapPolicy(GapPolicy.NEXT_VALID_TIME).nextTimeAfter(before)).isEqualTo(new DateTime(2012, 3, 25, 3, 0));
+        assertThat(cron.withGapPolicy(GapPolicy.SKIP).nextTimeAfter(before)).isEqualTo(new DateTime(2012, 3, 26, 2, 30));
+
+        DateTime after = new DateTime(2012, 3, 25, 12, 0);
+        assertThat(cron.previousTimeBefore(after)).isEqualTo(new DateTime(2012, 3, 25, 3, 30));
+        assertThat(cron.withGapPolicy(GapPolicy.NEXT_VALID_TIME).previousTimeBefore(after)).isEqualTo(new DateTime(2012, 3, 25, 3, 0));
+        assertThat(cron.withGapPolicy(GapPolicy.SKIP).previousTimeBefore(after)).isEqualTo(new DateTime(2012, 3, 24, 2, 30));
+
+        // the times shifted out of the half hour gap of Lord Howe Island interleave with the times following it
+        DateTimeZone lordHowe = DateTimeZone.forID("Australia/Lord_Howe");
+        CronExpression every7 = new CronExpression("0 */7 2 * * *");
+        DateTime lordHoweAfter = new DateTime(2012, 10, 7, 12, 0, lordHowe);
+        assertThat(every7.previousTimeBefore(lordHoweAfter)).isEqualTo(new DateTime(2012, 10, 7, 2, 58, lordHowe));
+        List<Integer> minutes = every7.stream(new DateTime(2012, 10, 7, 0, 0, lordHowe)).limit(9)
+                .map(DateTime::getMinuteOfHour).collect(Collectors.toList());
+        assertThat(minutes).isEqualTo(Arrays.asList(30, 35, 37, 42, 44, 49, 51, 56, 58));
+    }
+
+    @Test
+    public void check_overlap_policy() throws Exception {
+        CronExpression cron = new CronExpression("0 30 2 * * *");
+        DateTime before = new DateTime(2012, 10, 28, 0, 0);
+        DateTime summerTime = new DateTime(2012, 10, 28, 2, 30).withEarlierOffsetAtOverlap();
+        DateTime winterTime = summerTime.withLaterOffsetAtOverlap();
+        assertThat(cron.nextTimeAfter(before)).isEqualTo(summerTime);
+        assertThat(cron.nextTimeAfter(summerTime)).isEqualTo(new DateTime(2012, 10, 29, 2, 30));
+        assertThat(cron.withOverlapPolicy(OverlapPolicy.LATER).nextTimeAfter(before)).isEqualTo(winterTime);
+        assertThat(cron.withOverlapPolicy(OverlapPolicy.BOTH).nextTimeAfter(summerTime)).isEqualTo(winterTime);
+        // starting in the second pass does not fire a time already fired in the first
+        assertThat(cron.nextTimeAfter(winterTime.minusMinutes(10))).isEqualTo(new DateTime(2012, 10, 29, 2, 30));
+        assertThat(cron.withOverlapPolicy(OverlapPolicy.LATER).nextTimeAfter(summerTime.plusMinutes(10))).isEqualTo(winterTime);
+
+        DateTime after = new DateTime(2012, 10, 28, 12, 0);
+        assertThat(cron.previousTimeBefore(after)).isEqualTo(summerTime);
+        assertThat(cron.withOverlapPolicy(OverlapPolicy.LATER).previousTimeBefore(after)).isEqualTo(winterTime);
+        assertThat(cron.withOverlapPolicy(OverlapPolicy.BOTH).previousTimeBefore(winterTime)).isEqualTo(summerTime);
+
+        // expressions matching every hour run in both passes by default
+        CronExpression hourly = new CronExpression("0 30 * * * *");
+        assertThat(hourly.nextTimeAfter(summerTime)).isEqualTo(winterTime);
+        assertThat(hourly.withOverlapPolicy(OverlapPolicy.EARLIER).nextTimeAfter(summerTime)).isEqualTo(winterTime.plusHours(1));
+        assertThat(hourly.countBetween(before, after)).isEqualTo(13);
+        assertThat(hourly.stream(before).limit(13).filter(time -> time.isBefore(after)).count()).isEqualTo(13);
+    }
+
+    @Test
+    public void check_iterator_follows_daylight_saving_policies() throws Exception {
+        String[] expressions = {"0 30 2 * * *", "0 */20 1-3 * * *", "0 0 * * * *"};
+        DateTime start = new DateTime(2012, 3, 24, 0, 0);
+        for (String expr : expressions) {
+            for (GapPolicy gapPolicy : GapPolicy.values()) {
+                for (OverlapPolicy overlapPolicy : OverlapPolicy.values()) {
+                    CronExpression cron = new CronExpression(expr).withGapPolicy(gapPolicy).withOverlapPolicy(overlapPolicy);
+                    Iterator<DateTime> iterator = cron.iterator(start.plusMonths(7));
+                    DateTime time = start.plusMonths(7);
+                    for (int i = 0; i < 100; i++) {
+                        time = cron.nextTimeAfter(time);
+                        assertThat(iterator.next()).isEqualTo(time);
+                    }
+                    iterator = cron.iterator(start);
+                    time = start;
+                    for (int i = 0; i < 100; i++) {
+                        time = cron.nextTimeAfter(time);
+                        assertThat(iterator.next()).isEqualTo(time);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void check_next_times_after_checkpoints() throws Exception {
+        String[] expressions = {"0 30 2 * * *", "0 */20 1-3 * * *", "0 0 * * * *", "0 0 0 L * ?", "0 0 12 * * * 2012"};
+        DateTimeZone zone = DateTimeZone.forID("Europe/Oslo");
+        long start = new DateTime(2012, 3, 20, 0, 0, zone).getMillis();
+        long[] checkpoints = new long[2000];
+        for (int i = 0; i < checkpoints.length; i++) {
+            // every 153 minutes over seven months, across both daylight saving transitions, then a few out of order
+            checkpoints[i] = i < 1990 ? start + i * 153 * 60000L : start + (checkpoints.length - i) * 86400000L;
+        }
+        long[] out = new long[checkpoints.length];
+        for (String expr : expressions) {
+            for (OverlapPolicy overlapPolicy : OverlapPolicy.values()) {
+                CronExpression cron = new CronExpression(expr).withOverlapPolicy(overlapPolicy);
+                cron.tryNextTimesAfter(checkpoints, zone, out);
+                for (int i = 0; i < checkpoints.length; i++) {
+                    assertThat(out[i]).isEqualTo(cron.tryNextTimeAfter(checkpoints[i], zone));
+                }
+                cron.tryNextTimesAfter(checkpoints, ZoneId.of("Europe/Oslo"), out);
+                for (int i = 0; i < checkpoints.length; i++) {
+                    assertThat(out[i]).isEqualTo(cron.tryNextTimeAfter(checkpoints[i], zone));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void check_hashed_values() throws Exception {
+        // the values of a key are the same on every run
+        assertThat(CronExpression.create("H H * * * *", "job-1").toCanonicalString()).isEqualTo("30 18 * * * *");
+        assertThat(CronExpression.create("0 H/15 H(8-17) H * H", "job-1").toCanonicalString()).isEqualTo("0 3/15 16 26 * SAT");
+        assertThat(new CronExpression("0 H/15 H(8-17) H * H", true, true, "job-1")).isEqualTo(CronExpression.create("0 3/15 16 26 * SAT"));
+        assertThat(CronExpression.create("0 H * * * *", "job-1")).isEqualTo(CronExpression.create("0 H * * * *", "job-1"));
+
+        int[] counts = new int[60];
+        for (int i = 0; i < 6000; i++) {
+            CronExpression cron = CronExpression.create("0 H(0-29)/10 H * * *", "job-" + i);
+            assertThat(cron.getMinuteField().countValues()).isEqualTo(3);
+            assertThat(cron.getMinuteField().firstValue()).isLessThan(10);
+            assertThat(cron.getMinuteField().lastValue()).isLessThan(30);
+            assertThat(CronExpression.create("0 0 0 H * ?", "job-" + i).getDayOfMonthField().firstValue()).isLessThanOrEqualTo(28);
+            counts[CronExpression.create("0 H * * * *", "job-" + i).getMinuteField().firstValue()]++;
+        }
+        for (int count : counts) {
+            assertThat(count).isGreaterThan(50).isLessThan(150);
+        }
+    }
+
+    @Test
+    public void check_invalid_hashed_values() throws Exception {
+        String[] invalid = {"0 H(30-20) * * * *", "0 H(0-99) * * * *", "0 H(0-) * * * *", "0 H(0-29 * * * *", "0 0 0 ? * H#3", "0 HL * * * *"};
+        for (String expr : invalid) {
+            try {
+                CronExpression.create(expr, "job-1");
+                fail("Created " + expr);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        try {
+            new CronExpression("0 H * * * *");
+            fail("Created H without a hash key");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).isEqualTo("Invalid cron field 'H' for field [MINUTE], H needs a hash key");
+        }
+        try {
+            CronExpression.create("0 0 0 * * ? H", "job-1");
+            fail("Created H in the year field");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).isEqualTo("Invalid cron field 'H' for field [YEAR]");
+        }
+    }
+
+    @Test
+    public void check_statistics() throws Exception {
+        CronStatistics everySecond = new CronExpression("* * * * * *").getStatistics();
+        assertThat(everySecond.getMinimumGapSeconds()).isEqualTo(1);
+        assertThat(everySecond.getMaximumGapSeconds()).isEqualTo(1);
+        assertThat(everySecond.getAverageTimesPerDay()).isEqualTo(86400.0);
+
+        // Friday 17:45 to Monday 09:00
+        CronStatistics officeHours = new CronExpression("0 */15 9-17 * * MON-FRI").getStatistics();
+        assertThat(officeHours.getMinimumGapSeconds()).isEqualTo(900);
+        assertThat(officeHours.getMaximumGapSeconds()).isEqualTo(2 * 86400 + 15 * 3600 + 15 * 60);
+        assertThat(officeHours.getAverageTimesPerDay()).isGreaterThan(36 * 5 / 7.0 - 0.01).isLessThan(36 * 5 / 7.0 + 0.01);
+
+        CronStatistics lastDay = new CronExpression("0 0 0 L * *").getStatistics();
+        assertThat(lastDay.getMinimumGapSeconds()).isEqualTo(28 * 86400);
+        assertThat(lastDay.getMaximumGapSeconds()).isEqualTo(31 * 86400);
+        assertThat(lastDay.getAverageTimesPerMonth()).isEqualTo(1.0);
+
+        // 2100 is not a leap year
+        CronStatistics leapDay = new CronExpression("0 0 0 29 2 *").getStatistics();
+        assertThat(leapDay.getMinimumGapSeconds()).isEqualTo(1461 * 86400L);
+        assertThat(leapDay.getMaximumGapSeconds()).isEqualTo(2921 * 86400L);
+
+        CronStatistics twice = new CronExpression("0 0 0 1 1 ? 2020,2030").getStatistics();
+        assertThat(twice.getMinimumGapSeconds()).isEqualTo(3653 * 86400L);
+        assertThat(twice.getAverageTimesPerMonth()).isEqualTo(1 / 12.0);
+
+        CronStatistics once = new CronExpression("0 0 0 1 1 ? 2030").getStatistics();
+        assertThat(once.getMinimumGapSeconds()).isEqualTo(-1);
+        assertThat(once.getMaximumGapSeconds()).isEqualTo(-1);
+        CronStatistics never = new CronExpression("0 0 0 30 2 ?").getStatistics();
+        assertThat(never.getMaximumGapSeconds()).isEqualTo(-1);
+        assertThat(never.getAverageTimesPerDay()).isEqualTo(0.0);
+    }
 }
@@ -50,6 +50,7 @@ public class CronExpressionValidationTest {
             "* 10-20 * * * ? 2005",
             "0 0 0 ? * */5",
             "0 0 0 ? * SUN-SAT/5",
+            "0 15 10 ? * L",
     };
 
     @Test
@@ -0,0 +1,78 @@
+package fc.cron;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CronIndexTest {
+
+    @Test
+    public void shall_find_matching_expressions() {
+        List<CronExpression> expressions = Corpus.expressions();
+        expressions.add(new CronExpression("0 0 0 * * 1", true, true));
+        CronIndex index = new CronIndex(expressions);
+        assertThat(index.size()).isEqualTo(expressions.size());
+
+        DateTimeZone zone = DateTimeZone.forID("America/New_York");
+        BitSet result = new BitSet();
+        List<DateTime> times = new ArrayList<DateTime>();
+        for (DateTime day = new DateTime(2015, 12, 25, 0, 0, zone); day.getYear() < 2018; day = day.plusDays(1)) {
+            times.add(day);
+            times.add(day.withTime(10, 15, 0, 0));
+            times.add(day.withTime(14, 35, 0, 0));
+        }
+        times.add(new DateTime(2016, 1, 1, 12, 0, 15, 500, zone));
+        for (DateTime time : times) {
+            index.matching(time.getMillis(), zone, result);
+            long second = time.getMillis() - time.getMillis() % 1000;
+            for (int id = 0; id < expressions.size(); id++) {
+                assertThat(result.get(id)).as(index.get(id) + " at " + time).isEqualTo(Corpus.fires(expressions.get(id), second, zone));
+            }
+        }
+    }
+
+    @Test
+    public void shall_return_matching_ids() {
+        CronIndex index = new CronIndex(Arrays.asList(new CronExpression("0 0 12 * * ?"), new CronExpression("0 0 13 * * ?"),
+                new CronExpression("0 0 12 L * ?")));
+        BitSet matching = index.matching(new DateTime(2016, 1, 31, 12, 0));
+        assertThat(matching.cardinality()).isEqualTo(2);
+        assertThat(matching.get(0)).isTrue();
+        assertThat(matching.get(2)).isTrue();
+        assertThat(index.matching(new DateTime(2016, 1, 30, 12, 0)).cardinality()).isEqualTo(1);
+    }
+
+    @Test
+    public void shall_follow_daylight_saving_policies() {
+        List<CronExpression> expressions = new ArrayList<CronExpression>();
+        for (String expr : new String[]{"*/7 0,30 2 * * ?", "0 */10 * * * *", "0 0 2 * * *", "0 30 2 L 3 ?"}) {
+            CronExpression expression = new CronExpression(expr);
+            for (GapPolicy gapPolicy : GapPolicy.values()) {
+                for (OverlapPolicy overlapPolicy : OverlapPolicy.values()) {
+                    expressions.add(expression.withGapPolicy(gapPolicy).withOverlapPolicy(overlapPolicy));
+                }
+            }
+        }
+        CronIndex index = new CronIndex(expressions);
+
+        DateTimeZone zone = DateTimeZone.forID("Europe/Oslo");
+        BitSet result = new BitSet();
+        for (DateTime day : new DateTime[]{new DateTime(2016, 3, 27, 0, 0, zone), new DateTime(2016, 10, 30, 0, 0, zone)}) {
+            for (long second = day.getMillis(); second < day.plusHours(6).getMillis(); second += 1000) {
+                index.matching(second, zone, result);
+                for (int id = 0; id < expressions.size(); id++) {
+                    CronExpression expression = expressions.get(id);
+                    assertThat(result.get(id)).as(expression + " " + expression.getGapPolicy() + " " + expression.getOverlapPolicy()
+                            + " at " + new DateTime(second, zone)).isEqualTo(Corpus.fires(expression, second, zone));
+                }
+            }
+        }
+    }
+}
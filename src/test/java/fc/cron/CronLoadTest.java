@@ -0,0 +1,66 @@
+package fc.cron;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CronLoadTest {
+
+    @Test
+    public void shall_count_same_times_as_expressions() throws Exception {
+        DateTimeZone zone = DateTimeZone.forID("Europe/Oslo");
+        List<CronExpression> expressions = new ArrayList<CronExpression>();
+        for (String expr : Corpus.EXPRESSIONS) {
+            for (OverlapPolicy overlapPolicy : OverlapPolicy.values()) {
+                expressions.add(new CronExpression(expr).withOverlapPolicy(overlapPolicy));
+            }
+            expressions.add(new CronExpression(expr).withGapPolicy(GapPolicy.NEXT_VALID_TIME));
+            expressions.add(new CronExpression(expr).withGapPolicy(GapPolicy.SKIP));
+        }
+        // both daylight saving transitions, and windows starting and ending within buckets
+        long[] starts = {new DateTime(2016, 3, 26, 12, 0, zone).getMillis(), new DateTime(2016, 10, 29, 23, 59, 30, zone).getMillis() + 123};
+        long[] bucketSizes = {1000L, 7000L, 60000L, 5400000L, 86400000L};
+        for (long from : starts) {
+            for (long bucketMillis : bucketSizes) {
+                long to = from + 2 * 86400000L - 4321;
+                long[] expected = new long[(int) ((to - from - 1) / bucketMillis + 1)];
+                for (CronExpression expression : expressions) {
+                    for (long time : Corpus.timesBetween(expression, from, to, zone)) {
+                        expected[(int) ((time - from) / bucketMillis)]++;
+                    }
+                }
+                assertThat(Arrays.equals(CronLoad.histogram(expressions, from, to, bucketMillis, zone), expected)).isTrue();
+                assertThat(Arrays.equals(CronLoad.histogram(expressions, from, to, bucketMillis, ZoneId.of("Europe/Oslo")), expected)).isTrue();
+            }
+        }
+    }
+
+    @Test
+    public void shall_count_copies_and_find_the_peak() throws Exception {
+        List<CronExpression> expressions = new ArrayList<CronExpression>();
+        for (int i = 0; i < 1000; i++) {
+            expressions.add(new CronExpression("0 0 * * * *"));
+            expressions.add(new CronExpression("0 0 12 * * *"));
+            expressions.add(CronExpression.create("0 H * * * *", "job-" + i));
+        }
+        long from = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        long[] histogram = CronLoad.histogram(expressions, from, from + 86400000L, 3600000L, DateTimeZone.UTC);
+        assertThat(histogram.length).isEqualTo(24);
+        assertThat(histogram[0]).isEqualTo(2000);
+        assertThat(histogram[12]).isEqualTo(3000);
+        assertThat(CronLoad.peak(histogram)).isEqualTo(12);
+        assertThat(CronLoad.peak(new long[0])).isEqualTo(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shall_reject_empty_window() throws Exception {
+        CronLoad.histogram(new ArrayList<CronExpression>(), 1000, 1000, 1000, DateTimeZone.UTC);
+    }
+}
@@ -0,0 +1,137 @@
+package fc.cron;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CronTableTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shall_find_same_times_as_expressions() throws Exception {
+        List<CronExpression> expressions = Corpus.expressions();
+        expressions.add(new CronExpression("0 0 0 * * 1", true, true));
+        expressions.add(new CronExpression("0 30 2 * * *").withGapPolicy(GapPolicy.SKIP).withOverlapPolicy(OverlapPolicy.LATER));
+        expressions.add(new CronExpression("0 0 0 * * 1-5").withSearchHorizon(1));
+        Path file = folder.newFile().toPath();
+        CronTable.write(file, expressions);
+        assertThat(Files.size(file)).isEqualTo(CronTable.HEADER_SIZE + expressions.size() * (long) CronTable.RECORD_SIZE);
+
+        CronTable table = CronTable.open(file);
+        assertThat(table.size()).isEqualTo(expressions.size());
+        DateTimeZone zone = DateTimeZone.forID("Europe/Oslo");
+        long[] starts = {new DateTime(2015, 12, 25, 0, 0, zone).getMillis()};
+        // jump ahead from each time so that a year of daylight saving transitions is covered
+        Corpus.assertNextTimes(expressions, zone, starts, 400, 86400000L, (id, time) -> table.tryNextTimeAfter(id, time, zone));
+        Corpus.assertNextTimes(expressions, zone, starts, 400, 86400000L, (id, time) -> table.tryNextTimeAfter(id, time, ZoneId.of("Europe/Oslo")));
+    }
+
+    /**
+     * The table searches its records with its own copy of the field by field search, kept in line with the one of
+     * {@link CronExpression} by comparing them over random expressions.
+     */
+    @Test
+    public void shall_find_same_times_as_random_expressions() throws Exception {
+        Random random = new Random(19);
+        String[] daysOfMonth = {"L", "LW", "15W", "L-3", "1W", "31W", "?"};
+        String[] daysOfWeek = {"5L", "FRI#2", "?", "1#5", "SUNL", "7#1"};
+        List<CronExpression> expressions = new ArrayList<CronExpression>();
+        while (expressions.size() < 500) {
+            String dayOfMonth = random.nextInt(3) == 0 ? daysOfMonth[random.nextInt(daysOfMonth.length)] : randomField(random, 1, 31);
+            String dayOfWeek = random.nextInt(3) == 0 ? daysOfWeek[random.nextInt(daysOfWeek.length)] : randomField(random, 0, 7);
+            String expr = randomField(random, 0, 59) + " " + randomField(random, 0, 59) + " " + randomField(random, 0, 23) + " "
+                    + dayOfMonth + " " + randomField(random, 1, 12) + " " + dayOfWeek + (random.nextInt(5) == 0 ? " " + randomField(random, 2010, 2040) : "");
+            try {
+                expressions.add(new CronExpression(expr, true, random.nextBoolean())
+                        .withGapPolicy(GapPolicy.values()[random.nextInt(GapPolicy.values().length)])
+                        .withOverlapPolicy(OverlapPolicy.values()[random.nextInt(OverlapPolicy.values().length)]));
+            } catch (IllegalArgumentException e) {
+                // both day fields restricted, or an invalid random field
+            }
+        }
+        Path file = folder.newFile().toPath();
+        CronTable.write(file, expressions);
+        CronTable table = CronTable.open(file);
+
+        String[] zones = {"Europe/Oslo", "America/New_York", "Australia/Lord_Howe", "UTC"};
+        for (int i = 0; i < expressions.size(); i++) {
+            CronExpression expression = expressions.get(i);
+            DateTimeZone zone = DateTimeZone.forID(zones[i % zones.length]);
+            long time = new DateTime(2011, 1, 1, 0, 0, zone).getMillis() + (long) (random.nextDouble() * 10 * 365 * 86400000L);
+            for (int n = 0; n < 10; n++) {
+                long next = expression.tryNextTimeAfter(time, zone);
+                assertThat(table.tryNextTimeAfter(i, time, zone)).as(expression + " after " + new DateTime(time, zone)).isEqualTo(next);
+                if (next == CronExpression.NO_TIME) {
+                    break;
+                }
+                time = next;
+            }
+        }
+    }
+
+    private static String randomField(Random random, int from, int to) {
+        int range = to - from + 1;
+        switch (random.nextInt(5)) {
+            case 0:
+                return "*";
+            case 1:
+                return (from + random.nextInt(range)) + "/" + (1 + random.nextInt(range));
+            case 2:
+                return (from + random.nextInt(range)) + "-" + (from + random.nextInt(range));
+            default:
+                StringBuilder values = new StringBuilder().append(from + random.nextInt(range));
+                for (int n = random.nextInt(4); n > 0; n--) {
+                    values.append(',').append(from + random.nextInt(range));
+                }
+                return values.toString();
+        }
+    }
+
+    @Test
+    public void shall_reject_other_files() throws Exception {
+        Path file = folder.newFile().toPath();
+        Files.write(file, new byte[]{1, 2, 3});
+        try {
+            CronTable.open(file);
+            fail("Opened " + file);
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).startsWith("Not a cron table");
+        }
+
+        List<CronExpression> expressions = new ArrayList<CronExpression>();
+        expressions.add(new CronExpression("0 0 12 * * ?"));
+        CronTable.write(file, expressions);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        try {
+            CronTable.open(file);
+            fail("Opened " + file);
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).startsWith("Truncated cron table");
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shall_reject_index_out_of_range() throws Exception {
+        Path file = folder.newFile().toPath();
+        List<CronExpression> expressions = new ArrayList<CronExpression>();
+        expressions.add(new CronExpression("0 0 12 * * ?"));
+        CronTable.write(file, expressions);
+        CronTable.open(file).tryNextTimeAfter(1, 0, DateTimeZone.UTC);
+    }
+}
@@ -0,0 +1,83 @@
+package fc.cron.scheduler;
+
+import fc.cron.CronExpression;
+import org.joda.time.DateTimeUtils;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CronSchedulerTest {
+
+    @Test
+    public void shall_run_job_at_each_time() throws Exception {
+        final CountDownLatch runs = new CountDownLatch(2);
+        try (CronScheduler scheduler = new CronScheduler(Runnable::run)) {
+            scheduler.start();
+            CronJob job = scheduler.schedule(new CronExpression("* * * * * *"), runs::countDown);
+            assertThat(runs.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(job.isDone()).isFalse();
+            assertThat(job.getNextTime()).isGreaterThan(System.currentTimeMillis() - 1000);
+        }
+    }
+
+    @Test
+    public void shall_keep_running_job_which_throws() throws Exception {
+        final CountDownLatch runs = new CountDownLatch(2);
+        try (CronScheduler scheduler = new CronScheduler(Runnable::run)) {
+            scheduler.start();
+            scheduler.schedule(new CronExpression("* * * * * *"), () -> {
+                runs.countDown();
+                throw new IllegalStateException("failed run");
+            });
+            assertThat(runs.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    public void shall_run_missed_times_once() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        try (CronScheduler scheduler = new CronScheduler(Runnable::run)) {
+            scheduler.schedule(new CronExpression("* * * * * *"), runs::incrementAndGet);
+            // started an hour late, as after the host was suspended
+            DateTimeUtils.setCurrentMillisOffset(60 * 60 * 1000);
+            scheduler.start();
+            Thread.sleep(1500);
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+        assertThat(runs.get()).isGreaterThan(0).isLessThan(4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shall_reject_missing_task() {
+        try (CronScheduler scheduler = new CronScheduler(Runnable::run)) {
+            scheduler.schedule(new CronExpression("* * * * * *"), null);
+        }
+    }
+
+    @Test
+    public void shall_not_run_cancelled_job() throws Exception {
+        final CountDownLatch runs = new CountDownLatch(1);
+        try (CronScheduler scheduler = new CronScheduler(Runnable::run)) {
+            CronJob job = scheduler.schedule(new CronExpression("* * * * * *"), runs::countDown);
+            job.cancel();
+            scheduler.start();
+            assertThat(job.isDone()).isTrue();
+            assertThat(runs.await(2500, TimeUnit.MILLISECONDS)).isFalse();
+        }
+    }
+
+    @Test
+    public void shall_be_done_when_expression_has_no_next_time() {
+        try (CronScheduler scheduler = new CronScheduler(Runnable::run)) {
+            CronJob job = scheduler.schedule(new CronExpression("0 0 0 1 1 ? 2000"), () -> {
+            });
+            assertThat(job.isDone()).isTrue();
+            assertThat(job.getNextTime()).isEqualTo(CronExpression.NO_TIME);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package fc.cron.scheduler;
+
+import fc.cron.CronExpression;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TimingWheelTest {
+
+    private static final long DAY = 24 * 60 * 60;
+
+    private static CronJob job(long deadline) {
+        CronJob job = new CronJob(new CronExpression("* * * * * *"), null);
+        job.deadline = deadline;
+        return job;
+    }
+
+    @Test
+    public void shall_expire_jobs_at_their_deadline() {
+        long start = 1451606400L + 7; // 2016-01-01T00:00:07Z
+        TimingWheel wheel = new TimingWheel(start);
+        long[] delays = {1, 2, 52, 53, 59, 60, 61, 3599, 3600, 3601, DAY - 1, DAY, DAY + 1, 511 * DAY, 512 * DAY, 600 * DAY};
+        for (long delay : delays) {
+            assertThat(wheel.add(job(start + delay))).isTrue();
+        }
+        assertThat(wheel.size()).isEqualTo(delays.length);
+
+        final List<Long> expired = new ArrayList<Long>();
+        for (long time = start; time < start + 601 * DAY; time += 1000) {
+            wheel.advance(time, job -> {
+                assertThat(job.deadline).isEqualTo(wheel.now());
+                expired.add(job.deadline - start);
+            });
+        }
+        assertThat(expired).hasSize(delays.length);
+        for (int i = 0; i < delays.length; i++) {
+            assertThat(expired.get(i)).isEqualTo(delays[i]);
+        }
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shall_not_add_job_which_is_due() {
+        TimingWheel wheel = new TimingWheel(100);
+        assertThat(wheel.add(job(100))).isFalse();
+        assertThat(wheel.add(job(99))).isFalse();
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shall_allow_adding_jobs_when_they_expire() {
+        TimingWheel wheel = new TimingWheel(0);
+        wheel.add(job(7));
+        final List<Long> expired = new ArrayList<Long>();
+        wheel.advance(10000, job -> {
+            expired.add(wheel.now());
+            job.deadline += 7 * 60;
+            wheel.add(job);
+        });
+        assertThat(expired).hasSize(24);
+        assertThat(expired.get(23)).isEqualTo(7 + 23 * 7 * 60);
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shall_drop_cancelled_jobs() {
+        TimingWheel wheel = new TimingWheel(0);
+        List<CronJob> jobs = new ArrayList<CronJob>();
+        for (long delay : new long[]{5, 5, 90, 4000, 2 * DAY, 600 * DAY, 700 * DAY}) {
+            CronJob job = job(delay);
+            jobs.add(job);
+            wheel.add(job);
+        }
+        jobs.get(0).cancel();
+        jobs.get(5).cancel();
+        assertThat(wheel.purge()).isEqualTo(2);
+        assertThat(wheel.size()).isEqualTo(5);
+
+        // moved down a wheel at the start of their slot
+        jobs.get(2).cancel();
+        jobs.get(3).cancel();
+        final List<Long> expired = new ArrayList<Long>();
+        wheel.advance(3 * DAY, job -> expired.add(job.deadline));
+        assertThat(expired).containsExactly(5L, 2 * DAY);
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+}